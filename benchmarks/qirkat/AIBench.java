@@ -0,0 +1,62 @@
+package qirkat;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of fixed-depth searches of each of the Positions.  Each
+ *  search starts with a new AI, so that its transposition table is
+ *  empty.
+ *  @author Lila Chalabi
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AIBench {
+
+    /** Name of the position searched. */
+    @Param({ Positions.OPENING, Positions.MIDDLEGAME, Positions.CAPTURES })
+    public String position;
+
+    /** Depth of the search. */
+    @Param({ "2", "4", "6" })
+    public int depth;
+
+    /** Set up the board searched. */
+    @Setup
+    public void setupBoard() {
+        _board = Positions.board(position);
+        _game = new Game(_board,
+                         new ReaderSource(new StringReader(""), false),
+                         new TextReporter());
+    }
+
+    /** Create the AI for the next search. */
+    @Setup(Level.Invocation)
+    public void setupAI() {
+        _ai = new AI(_game, _board.whoseMove());
+    }
+
+    /** Return the move found by a search of depth DEPTH. */
+    @Benchmark
+    public Move findMove() {
+        return _ai.findMove(_board, depth);
+    }
+
+    /** The board searched. */
+    private Board _board;
+    /** The game played on _board. */
+    private Game _game;
+    /** The AI searching _board. */
+    private AI _ai;
+
+}
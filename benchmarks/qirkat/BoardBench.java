@@ -0,0 +1,103 @@
+package qirkat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of move generation, checking, making and undoing, and
+ *  copying on each of the Positions.
+ *  @author Lila Chalabi
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BoardBench {
+
+    /** Name of the position measured. */
+    @Param({ Positions.OPENING, Positions.MIDDLEGAME, Positions.CAPTURES })
+    public String position;
+
+    /** Set up the board and the moves used by the benchmarks. */
+    @Setup
+    public void setup() {
+        _board = Positions.board(position);
+        int n = _board.getMoves(_moves);
+        _packed = _moves[n - 1];
+        _move = Move.unpack(_packed);
+    }
+
+    /** Return the number of moves generated into a buffer. */
+    @Benchmark
+    public int getMoves() {
+        return _board.getMoves(_moves);
+    }
+
+    /** Return the number of moves generated as a list. */
+    @Benchmark
+    public int getMovesList() {
+        return _board.getMoves().size();
+    }
+
+    /** Return whether the side to move can capture.  After the first
+     *  call, this reads the board's cached capture sources. */
+    @Benchmark
+    public boolean jumpPossible() {
+        return _board.jumpPossible();
+    }
+
+    /** Return whether the side to move can capture, computing the
+     *  capture sources afresh. */
+    @Benchmark
+    public boolean jumpPossibleUncached() {
+        _board.positionChanged();
+        return _board.jumpPossible();
+    }
+
+    /** Return whether the last generated move is legal.  After the first
+     *  call, this probes the board's cached table of legal moves. */
+    @Benchmark
+    public boolean legalMove() {
+        return _board.legalMove(_move);
+    }
+
+    /** Return whether the last generated move is legal, generating the
+     *  table of legal moves afresh. */
+    @Benchmark
+    public boolean legalMoveUncached() {
+        _board.positionChanged();
+        return _board.legalMove(_move);
+    }
+
+    /** Make and undo the last generated move, packed.  Returns the
+     *  resulting position's hash key. */
+    @Benchmark
+    public long makeMoveUndo() {
+        _board.makeMove(_packed);
+        long key = _board.hashKey();
+        _board.undo();
+        return key;
+    }
+
+    /** Return a copy of the board. */
+    @Benchmark
+    public Board copy() {
+        return new Board(_board);
+    }
+
+    /** The board measured. */
+    private Board _board;
+    /** Buffer for generated moves. */
+    private final long[] _moves = new long[Board.MOVE_BUFFER_SIZE];
+    /** The last move generated from _board, packed. */
+    private long _packed;
+    /** The last move generated from _board. */
+    private Move _move;
+
+}
@@ -0,0 +1,42 @@
+package qirkat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+/** Benchmarks of parsing moves and commands.
+ *  @author Lila Chalabi
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ParseBench {
+
+    /** Return a parsed step. */
+    @Benchmark
+    public Move parseStep() {
+        return Move.parseMove("c2-c3");
+    }
+
+    /** Return a parsed chain of jumps. */
+    @Benchmark
+    public Move parseJumps() {
+        return Move.parseMove("c1-a3-c5-c3-e5-e3-c1-c3");
+    }
+
+    /** Return a parsed move command. */
+    @Benchmark
+    public Command parseMoveCommand() {
+        return Command.parseCommand("c1-a3-c5-c3");
+    }
+
+    /** Return a parsed set command, which matches only after most other
+     *  command patterns have been tried. */
+    @Benchmark
+    public Command parseSetCommand() {
+        return Command.parseCommand("set white w-w-w bbbbb ----- bbbbb -----");
+    }
+
+}
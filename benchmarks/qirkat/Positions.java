@@ -0,0 +1,37 @@
+package qirkat;
+
+import static qirkat.PieceColor.*;
+
+/** The positions measured by the benchmarks.
+ *  @author Lila Chalabi
+ */
+class Positions {
+
+    /** Names of the positions, for use as JMH parameter values. */
+    static final String
+        OPENING = "opening",
+        MIDDLEGAME = "middlegame",
+        CAPTURES = "captures";
+
+    /** Return a new Board set to the position named NAME: the initial
+     *  position (White to move, 4 steps), a middlegame (Black to move,
+     *  15 steps), or a position in which White has 25 capturing moves
+     *  of up to 8 jumps each. */
+    static Board board(String name) {
+        Board result = new Board();
+        switch (name) {
+        case OPENING:
+            break;
+        case MIDDLEGAME:
+            result.setPieces("w-ww- -ww-w --b-w b-b-b bbb-b", BLACK);
+            break;
+        case CAPTURES:
+            result.setPieces("w-w-w bbbbb ----- bbbbb -----", WHITE);
+            break;
+        default:
+            throw new IllegalArgumentException("unknown position: " + name);
+        }
+        return result;
+    }
+
+}
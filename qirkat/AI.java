@@ -1,15 +1,28 @@
 package qirkat;
 
 import static qirkat.PieceColor.*;
+import static qirkat.Move.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /** A Player that computes its own moves.
  *  @author Lila Chalabi
  */
 public class AI extends Player {
 
-    /** Maximum minimax search depth before going to static evaluation. */
-    private static final int MAX_DEPTH = 5;
+    /** Maximum minimax search depth before going to static evaluation.
+     *  Iterative deepening normally runs out of time well before this. */
+    private static final int MAX_DEPTH = 64;
+    /** Largest number of captures that can follow one another: each
+     *  removes at least one of the pieces on the board. */
+    private static final int MAX_CAPTURES = 24;
+    /** Half-width of the window around the previous depth's score with
+     *  which iterative deepening starts each search. */
+    private static final int ASPIRATION = 1;
+    /** Number of positions searched between checks of the clock. */
+    private static final int CLOCK_INTERVAL = 256;
     /** A position magnitude indicating a win (for white if positive, black
      *  if negative). */
     private static final int WINNING_VALUE = Integer.MAX_VALUE - 1;
@@ -19,116 +32,857 @@ public class AI extends Player {
     /** A new AI for GAME that will play MYCOLOR. */
     AI(Game game, PieceColor myColor) {
         super(game, myColor);
+        _id = 0;
+        _tableChecks = new long[TABLE_SIZE];
+        _tableData = new long[TABLE_SIZE];
+        _tableMoves = new long[TABLE_SIZE];
+    }
+
+    /** A helper for LEADER, numbered ID > 0, that shares LEADER's
+     *  transposition table. */
+    private AI(AI leader, int id) {
+        super(leader.game(), leader.myColor());
+        _id = id;
+        _tableChecks = leader._tableChecks;
+        _tableData = leader._tableData;
+        _tableMoves = leader._tableMoves;
     }
 
     @Override
     Move myMove() {
         Main.startTiming();
-        Move move;
+        Move move = findMove();
         Main.endTiming();
-
-        move = findMove();
         return move;
     }
 
     /** Return a move for me from the current position, assuming there
-     *  is a move. */
+     *  is a move.  Searches to depths 1, 2, 3, ... until game().moveTime()
+     *  milliseconds have passed, and returns the best move found by the
+     *  deepest search that finished.  The depth-1 search always
+     *  finishes.  If game().threads() > 1, that many threads less one
+     *  run helper searches of the same position at the same time, which
+     *  speed up this one by filling in the shared transposition
+     *  table.  If game().forkJoin(), the threads instead divide up the
+     *  search tree (see splitFindMove). */
     public Move findMove() {
         Board b = new Board(board());
-        if (myColor() == WHITE) {
-            findMove(b, MAX_DEPTH, true, 1, -INFTY, INFTY);
-        } else {
-            findMove(b, MAX_DEPTH, true, -1, -INFTY, INFTY);
+        long deadline = System.currentTimeMillis() + game().moveTime();
+        ArrayList<Thread> helpers = new ArrayList<>();
+        ArrayList<AI> helperAIs = new ArrayList<>();
+        openPool();
+        for (int id = 1; _pool == null && id < game().threads(); id += 1) {
+            AI helper = new AI(this, id);
+            Board hb = new Board(b);
+            Thread t =
+                new Thread(() -> helper.deepen(hb, Long.MAX_VALUE));
+            t.setDaemon(true);
+            helperAIs.add(helper);
+            helpers.add(t);
+        }
+        _stopped = false;
+        for (Thread t : helpers) {
+            t.start();
         }
+        try {
+            return deepen(b, deadline);
+        } finally {
+            for (AI helper : helperAIs) {
+                helper._stopped = true;
+            }
+            for (Thread t : helpers) {
+                try {
+                    t.join();
+                } catch (InterruptedException excp) {
+                    /* Ignore InterruptedException */
+                }
+            }
+            closePool();
+        }
+    }
+
+    /** Return the best move for me from BOARD found by a single search of
+     *  DEPTH levels with no deadline, as for benchmarks.  Assumes there is
+     *  a move. */
+    Move findMove(Board board, int depth) {
+        search(board, depth, myColor() == WHITE ? 1 : -1);
         return _lastFoundMove;
     }
 
+    /** Return the value of BOARD (positive if it favors white) found by a
+     *  single search of DEPTH levels with no deadline, for the player to
+     *  move in BOARD. */
+    int findValue(Board board, int depth) {
+        return search(board, depth, board.whoseMove() == WHITE ? 1 : -1);
+    }
+
+    /** Return the value of BOARD found by a single search of DEPTH levels
+     *  with no deadline, as for findMove(BOARD, DEPTH, true, SENSE,
+     *  -INFTY, INFTY).  If game().forkJoin(), the search is split among
+     *  game().threads() threads. */
+    private int search(Board board, int depth, int sense) {
+        _stopped = false;
+        _deadline = Long.MAX_VALUE;
+        openPool();
+        try {
+            return searchRoot(board, depth, sense, -INFTY, INFTY);
+        } finally {
+            closePool();
+        }
+    }
+
+    /** Create _pool if searches are to be split among game().threads()
+     *  threads. */
+    private void openPool() {
+        if (game().forkJoin() && game().threads() > 1) {
+            _pool = new ForkJoinPool(game().threads());
+        }
+    }
+
+    /** Shut down _pool, if there is one. */
+    private void closePool() {
+        if (_pool != null) {
+            _pool.shutdown();
+            _pool = null;
+        }
+    }
+
+    /** Return the number of positions visited by the last search of a
+     *  whole tree (as by findMove(BOARD, DEPTH) or by one iteration of
+     *  findMove()).  For a split search, only the positions whose
+     *  searches contribute to its result are counted, so the count does
+     *  not depend on how the threads are scheduled. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Search BOARD to increasing depths until DEADLINE (as from
+     *  System.currentTimeMillis) or until stopped, returning the best
+     *  move found by the deepest search that finished.  Assumes
+     *  _stopped has been cleared.  Helpers start
+     *  at depth 1 or 2 and order moves differently from the others, so
+     *  that they do not all search the same positions in step.  After
+     *  the first depth, each search starts with a window of ASPIRATION
+     *  on either side of the previous depth's score, and is repeated with
+     *  that side of the window opened if the score falls outside it. */
+    private Move deepen(Board board, long deadline) {
+        int sense = myColor() == WHITE ? 1 : -1;
+        boolean forced = board.getMoves().size() == 1;
+        Move best = null;
+        _deadline = _id == 0 ? Long.MAX_VALUE : deadline;
+        int score = 0;
+        for (int depth = 1 + _id % 2; depth <= MAX_DEPTH; depth += 1) {
+            int alpha = -INFTY, beta = INFTY;
+            if (best != null) {
+                alpha = Math.max(score - ASPIRATION, -INFTY);
+                beta = Math.min(score + ASPIRATION, INFTY);
+            }
+            while (true) {
+                score = searchRoot(board, depth, sense, alpha, beta);
+                if (_stopped) {
+                    break;
+                } else if (score <= alpha && alpha > -INFTY) {
+                    alpha = -INFTY;
+                } else if (score >= beta && beta < INFTY) {
+                    beta = INFTY;
+                } else {
+                    break;
+                }
+            }
+            if (_stopped) {
+                break;
+            }
+            best = _lastFoundMove;
+            if (forced || score == INFTY || score == -INFTY) {
+                break;
+            }
+            _deadline = deadline;
+        }
+        return best;
+    }
+
+    /** Return the value of BOARD found by a search of DEPTH levels with
+     *  window ALPHA to BETA, recording its best move in _lastFoundMove,
+     *  as for findMove(BOARD, DEPTH, true, SENSE, ALPHA, BETA), and the
+     *  number of positions visited in _nodes.  The search is split among
+     *  the threads of _pool, if there is one. */
+    private int searchRoot(Board board, int depth, int sense, int alpha,
+                           int beta) {
+        if (_pool == null) {
+            Buffers buffers = _buffers.get();
+            long nodes0 = buffers.nodes;
+            int score = findMove(board, depth, true, sense, alpha, beta);
+            _nodes = buffers.nodes - nodes0;
+            return score;
+        }
+        SplitTask root = new SplitTask(null, 0);
+        int score = _pool.invoke(ForkJoinTask.adapt(() ->
+            splitFindMove(board, depth, true, sense, alpha, beta, root)));
+        if (!_stopped) {
+            for (long[] entry : root.entries) {
+                store(entry[0], entry[1], entry[2]);
+            }
+        }
+        _nodes = root.nodes;
+        return score;
+    }
+
+    /** Return true iff the current search has run past its deadline,
+     *  or been stopped, and should be abandoned, where BUFFERS are those
+     *  of the calling thread.  Consults the clock only once every
+     *  CLOCK_INTERVAL calls by that thread. */
+    private boolean searchStopped(Buffers buffers) {
+        buffers.nodes += 1;
+        if (!_stopped && buffers.nodes % CLOCK_INTERVAL == 0
+            && System.currentTimeMillis() >= _deadline) {
+            _stopped = true;
+        }
+        return _stopped;
+    }
+
     /** The move found by the last call to one of the ...FindMove methods
      *  below. */
     private Move _lastFoundMove;
+    /** The number of positions visited by the last call to searchRoot. */
+    private long _nodes;
+
+    /** 0 for an AI that plays moves, and the number of a helper
+     *  otherwise. */
+    private final int _id;
+    /** Time (as from System.currentTimeMillis) at which the current search
+     *  is abandoned. */
+    private long _deadline;
+    /** True iff the current search has been abandoned.  Set by another
+     *  thread to stop a helper. */
+    private volatile boolean _stopped;
+    /** The threads dividing up the current search, or null if the search
+     *  is not split. */
+    private ForkJoinPool _pool;
+
+    /* The transposition table records, for recently searched positions,
+     * the result of the search: its depth, its score, whether that score
+     * is exact or only a lower or upper bound on the position's value,
+     * and the best move found.  Positions are identified by
+     * Board.hashKey, and each occupies the slot given by the low-order
+     * bits of its key, replacing whatever was there.  Since keys ignore
+     * the visited-square restrictions, a stored move is only used if it
+     * is among the legal moves of the position being searched.
+     *
+     * An AI and its helpers share one table without locking.  The score,
+     * depth, and bound of an entry are packed into one long, and its
+     * check word is that long XORed with the key.  An entry whose two
+     * words were written by different threads fails the check (with
+     * overwhelming probability) and is ignored.  The move needs no such
+     * protection, since it is only ever used as a legal move.
+     *
+     * While a split search runs, the table is only read; see
+     * splitFindMove. */
+
+    /** Number of transposition table slots (a power of 2). */
+    private static final int TABLE_SIZE = 1 << 16;
+
+    /** Bound types of transposition table scores. */
+    private static final int EXACT = 0, LOWER = 1, UPPER = 2;
+
+    /** Key XOR data word of the position in each table slot. */
+    private final long[] _tableChecks;
+
+    /** Score (low 32 bits), search depth (next 8 bits), and bound type
+     *  (next 2) of the position in each table slot. */
+    private final long[] _tableData;
+
+    /** Best moves (packed) of the positions in each table slot. */
+    private final long[] _tableMoves;
 
     /** Minimax alpha beta implementation. Find a move from position BOARD and return its value, recording
      *  the move found in _lastFoundMove iff SAVEMOVE. The move
      *  should have maximal value or have value > BETA if SENSE==1,
      *  and minimal value or value < ALPHA if SENSE==-1. Searches up to
-     *  DEPTH levels.  Searching at level 0 simply returns a static estimate
-     *  of the board value and does not set _lastMoveFound. */
+     *  DEPTH levels.  Searching at level 0 continues only with captures,
+     *  until the position is quiet (see quiesce), and does not set
+     *  _lastMoveFound.  Each move is
+     *  made on BOARD itself and undone after its subtree is searched, so
+     *  BOARD is unchanged on return.  If the deadline passes during the
+     *  search, it is abandoned: the value returned is meaningless and
+     *  nothing is recorded.  The value of a move is only a bound if it
+     *  falls outside the window the move was searched with, so a move
+     *  whose value ties the best so far replaces it only if that value
+     *  is exact.  Moves are generated a stage at a time by
+     *  this thread's iterator for DEPTH, so that the search allocates no
+     *  storage and a cutoff by the table's move generates nothing.  This
+     *  is a principal variation search: each move after the first is
+     *  searched with a null window just above the best value so far
+     *  (below it, if SENSE == -1), and searched again with the full
+     *  window only if that shows it to be better. */
     public int findMove(Board board, int depth, boolean saveMove, int sense,
                         int alpha, int beta) {
-        Move best;
-        best = null;
+        long best;
+        best = NO_MOVE;
         int best_score = 0;
 
-        if (sense == 1) {
-            if (depth == 0 || !board.isMove()) {
-                return staticScore(board);
+        Buffers buffers = _buffers.get();
+        if (searchStopped(buffers)) {
+            return 0;
+        }
+        if (!board.isMove()) {
+            return staticScore(board);
+        }
+        if (depth == 0) {
+            return quiesce(board, 0, sense, alpha, beta);
+        }
+
+        long key = board.hashKey();
+        int slot = (int) key & (TABLE_SIZE - 1);
+        long hashMove = NO_MOVE;
+        long data = _tableData[slot];
+        if ((_tableChecks[slot] ^ data) == key) {
+            hashMove = _tableMoves[slot];
+            int score = (int) data;
+            int bound = (int) (data >>> 40) & 3;
+            if (!saveMove && (int) (data >>> 32 & 0xff) >= depth) {
+                if (bound == EXACT) {
+                    return score;
+                } else if (bound == LOWER) {
+                    alpha = Math.max(alpha, score);
+                } else {
+                    beta = Math.min(beta, score);
+                }
+                if (beta <= alpha) {
+                    return score;
+                }
             }
+        }
+        int alpha0 = alpha, beta0 = beta;
 
-            ArrayList<Move> moves = board.getMoves();
+        OrderedMoves moves = buffers.moves[depth];
+        moves.start(board, hashMove);
 
-            for (Move m : moves) {
-                Board next = new Board(board);
-                next.makeMove(m);
-                int response = findMove(next, depth - 1, true, -1, alpha, beta);
-                if (best == null || response >= best_score) {
+        if (sense == 1) {
+            for (long m = moves.next(); m != NO_MOVE; m = moves.next()) {
+                board.makeMove(m);
+                int low = alpha, high = best == NO_MOVE ? beta : alpha + 1;
+                int response = findMove(board, depth - 1, false, -1,
+                                        low, high);
+                if (high < beta && response > alpha && response < beta
+                    && !_stopped) {
+                    high = beta;
+                    response = findMove(board, depth - 1, false, -1,
+                                        low, high);
+                }
+                board.undo();
+                if (_stopped) {
+                    return 0;
+                }
+                boolean exact = low < response && response < high;
+                if (best == NO_MOVE || response > best_score
+                    || (response == best_score && exact)) {
                     best = m;
                     best_score = response;
                     alpha = Math.max(alpha, response);
                     if (beta <= alpha) {
+                        recordCutoff(buffers, m, depth);
                         break;
                     }
                 }
             }
 
         } else {
-            if (depth == 0 || !board.isMove()) {
-                return staticScore(board);
-            }
-            ArrayList<Move> moves = board.getMoves();
-
-            for (Move m : moves) {
-                Board next = new Board(board);
-                next.makeMove(m);
-                int response = findMove(next, depth - 1, true, 1, alpha, beta);
-                if (best == null || response <= best_score) {
+            for (long m = moves.next(); m != NO_MOVE; m = moves.next()) {
+                board.makeMove(m);
+                int low = best == NO_MOVE ? alpha : beta - 1, high = beta;
+                int response = findMove(board, depth - 1, false, 1,
+                                        low, high);
+                if (low > alpha && response < beta && response > alpha
+                    && !_stopped) {
+                    low = alpha;
+                    response = findMove(board, depth - 1, false, 1,
+                                        low, high);
+                }
+                board.undo();
+                if (_stopped) {
+                    return 0;
+                }
+                boolean exact = low < response && response < high;
+                if (best == NO_MOVE || response < best_score
+                    || (response == best_score && exact)) {
                     best = m;
                     best_score = response;
                     beta = Math.min(beta, response);
                     if (beta <= alpha) {
+                        recordCutoff(buffers, m, depth);
                         break;
                     }
                 }
             }
         }
 
+        if (_pool == null) {
+            store(key, tableData(depth, best_score, alpha0, beta0), best);
+        }
+
         if (saveMove) {
-            Board view = new Board(board);
-            _lastFoundMove = best;
+            _lastFoundMove = unpack(best);
         }
 
         return best_score;
     }
 
+    /** Return the value of BOARD, as for findMove(BOARD, 0, false, SENSE,
+     *  ALPHA, BETA), where BOARD is reached by PLY captures from the
+     *  leaves of the main search.  While a capture is possible it is
+     *  mandatory, so the static score is meaningless; instead, the
+     *  captures are searched (with alpha-beta pruning) until the
+     *  position is quiet.  A quiet position is scored by staticScore,
+     *  which is also the bound a player stands on when it has no capture
+     *  to make.  Capture sequences end after at most MAX_CAPTURES
+     *  plies. */
+    private int quiesce(Board board, int ply, int sense, int alpha,
+                        int beta) {
+        Buffers buffers = _buffers.get();
+        if (searchStopped(buffers)) {
+            return 0;
+        }
+        if (!board.jumpPossible()) {
+            return staticScore(board);
+        }
+        OrderedMoves moves = buffers.captures[ply];
+        moves.start(board, NO_MOVE);
+        int bestScore = sense == 1 ? -INFTY : INFTY;
+        for (long m = moves.next(); m != NO_MOVE; m = moves.next()) {
+            board.makeMove(m);
+            int response = quiesce(board, ply + 1, -sense, alpha, beta);
+            board.undo();
+            if (_stopped) {
+                return 0;
+            }
+            if (sense == 1) {
+                bestScore = Math.max(bestScore, response);
+                alpha = Math.max(alpha, response);
+            } else {
+                bestScore = Math.min(bestScore, response);
+                beta = Math.min(beta, response);
+            }
+            if (beta <= alpha) {
+                break;
+            }
+        }
+        return bestScore;
+    }
 
+    /** Return the transposition table data word recording value SCORE,
+     *  as found by a search to DEPTH levels with window ALPHA to BETA. */
+    private static long tableData(int depth, int score, int alpha,
+                                  int beta) {
+        int bound;
+        if (score <= alpha) {
+            bound = UPPER;
+        } else if (score >= beta) {
+            bound = LOWER;
+        } else {
+            bound = EXACT;
+        }
+        return (score & 0xffffffffL) | ((long) depth << 32)
+            | ((long) bound << 40);
+    }
 
-    /** Return a heuristic value for BOARD. set this equal to number of white
-     * pieces minus number of black*/
-    public int staticScore(Board board) {
-        if (!board.isMove() && board.whoseMove() == PieceColor.WHITE) {
-            return -INFTY;
-        } else if (!board.isMove() && board.whoseMove() == PieceColor.BLACK) {
-            return INFTY;
+    /** Record in the transposition table that the position with key KEY
+     *  has data word DATA (see tableData) and best move BEST. */
+    private void store(long key, long data, long best) {
+        int slot = (int) key & (TABLE_SIZE - 1);
+        _tableData[slot] = data;
+        _tableChecks[slot] = key ^ data;
+        _tableMoves[slot] = best;
+    }
+
+    /** Return the best move recorded in the transposition table for the
+     *  position with key KEY, or NO_MOVE if there is none. */
+    private long tableMove(long key) {
+        int slot = (int) key & (TABLE_SIZE - 1);
+        long move = _tableMoves[slot];
+        if ((_tableChecks[slot] ^ _tableData[slot]) != key) {
+            return NO_MOVE;
+        }
+        return move;
+    }
+
+    /** Rotate the first N elements of MOVES right by DISTANCE places, as
+     *  for Collections.rotate. */
+    private static void rotate(long[] moves, int n, int distance) {
+        if (n == 0) {
+            return;
         }
-        int whiteCount = 0;
-        int blackCount = 0;
-        for (PieceColor p : board._pieces) {
-            if (p == WHITE) {
-                whiteCount++;
-            } else if (p == BLACK) {
-                blackCount++;
+        distance %= n;
+        reverse(moves, 0, n);
+        reverse(moves, 0, distance);
+        reverse(moves, distance, n);
+    }
+
+    /** Reverse elements START to END-1 of MOVES. */
+    private static void reverse(long[] moves, int start, int end) {
+        for (int i = start, j = end - 1; i < j; i += 1, j -= 1) {
+            long t = moves[i];
+            moves[i] = moves[j];
+            moves[j] = t;
+        }
+    }
+
+    /** Move iterators for each level of a search by one thread, and the
+     *  move-ordering statistics and position count of that thread.
+     *  Keeping these per thread lets the threads of a split search
+     *  update them without synchronization.  A split search clears the
+     *  statistics at the start of each of its tasks, so that they are
+     *  in effect per task. */
+    private class Buffers {
+        /** Iterators over the moves for each remaining depth. */
+        final OrderedMoves[] moves = new OrderedMoves[MAX_DEPTH + 1];
+        /** Iterators over the captures for each ply of quiesce. */
+        final OrderedMoves[] captures = new OrderedMoves[MAX_CAPTURES + 1];
+        /** Killer moves (packed) for each depth, most recent first, or
+         *  NO_MOVE. */
+        final long[][] killers = new long[MAX_DEPTH + 1][KILLERS];
+        /** History scores of non-capturing moves, indexed by starting and
+         *  ending square. */
+        final int[][] history =
+            new int[Move.MAX_INDEX + 1][Move.MAX_INDEX + 1];
+        /** Number of positions this thread has visited. */
+        long nodes;
+
+        {
+            for (int depth = 0; depth <= MAX_DEPTH; depth += 1) {
+                moves[depth] = new OrderedMoves(depth);
+            }
+            for (int ply = 0; ply <= MAX_CAPTURES; ply += 1) {
+                captures[ply] = new OrderedMoves(0);
+            }
+            clearStatistics();
+        }
+
+        /** Forget all killer moves and history scores. */
+        void clearStatistics() {
+            for (long[] k : killers) {
+                Arrays.fill(k, NO_MOVE);
+            }
+            for (int[] scores : history) {
+                Arrays.fill(scores, 0);
+            }
+        }
+    }
+
+    /** The search buffers of each thread searching for me. */
+    private final ThreadLocal<Buffers> _buffers =
+        ThreadLocal.withInitial(() -> new Buffers());
+
+    /** Iterates over the moves from a position as Board.MoveIterator
+     *  does, searching the move from the transposition table first and
+     *  ordering the others as described below for a search of a given
+     *  depth.  Of captures that lead to the same position, only one is
+     *  searched. */
+    private class OrderedMoves extends Board.MoveIterator {
+        /** An iterator for searches of DEPTH levels. */
+        OrderedMoves(int depth) {
+            _depth = depth;
+            setDistinct(true);
+        }
+
+        @Override
+        void order(long[] moves, int n) {
+            if (_id > 0) {
+                rotate(moves, n, _id);
+            }
+            if (n > _ranks.length) {
+                _ranks = new int[n];
+            }
+            orderMoves(moves, n, _ranks, NO_MOVE, _depth);
+        }
+
+        /** Depth of the searches using me. */
+        private final int _depth;
+        /** Ranks of the moves being ordered (see orderMoves), enlarged
+         *  as needed. */
+        private int[] _ranks = new int[Board.MOVE_BUFFER_SIZE];
+    }
+
+    /* Moves are searched in order of decreasing promise, to make
+     * alpha-beta cutoffs come as early as possible:
+     *   1. the best move recorded for the position in the transposition
+     *      table (typically found by the previous iteration);
+     *   2. captures, longest chains first (when any capture is possible,
+     *      all moves are captures);
+     *   3. killer moves: the last two non-capturing moves that caused a
+     *      cutoff at the same depth, which are often good in sibling
+     *      positions too;
+     *   4. other non-capturing moves, by their history score: the
+     *      accumulated squares of the depths at which a move between the
+     *      same two squares caused a cutoff.
+     * Moves with equal rank keep their order from Board.getMoves. */
+
+    /** Ranks of the move categories searched before the ones ranked by
+     *  history. */
+    private static final int
+        HASH_RANK = Integer.MAX_VALUE,
+        CAPTURE_RANK = 1 << 26,
+        KILLER_RANK = 1 << 25;
+
+    /** History scores are halved when one passes this. */
+    private static final int HISTORY_LIMIT = 1 << 24;
+
+    /** Number of killer moves kept for each depth. */
+    private static final int KILLERS = 2;
+
+    /** Sort the first N packed MOVES for searching DEPTH levels, as
+     *  described above, where HASHMOVE (possibly NO_MOVE) is the move
+     *  from the transposition table.  RANKS is scratch space for at least
+     *  N values. */
+    void orderMoves(long[] moves, int n, int[] ranks, long hashMove,
+                    int depth) {
+        Buffers buffers = _buffers.get();
+        for (int i = 0; i < n; i += 1) {
+            ranks[i] = rank(buffers, moves[i], hashMove, depth);
+        }
+        for (int i = 1; i < n; i += 1) {
+            long m = moves[i];
+            int r = ranks[i];
+            int j;
+            for (j = i; j > 0 && ranks[j - 1] < r; j -= 1) {
+                ranks[j] = ranks[j - 1];
+                moves[j] = moves[j - 1];
+            }
+            ranks[j] = r;
+            moves[j] = m;
+        }
+    }
+
+    /** Return the rank of M in the order in which moves are searched at
+     *  DEPTH by the thread with BUFFERS, given that HASHMOVE is the
+     *  transposition table's move.  Moves of higher rank are searched
+     *  first. */
+    private int rank(Buffers buffers, long m, long hashMove, int depth) {
+        if (m == hashMove) {
+            return HASH_RANK;
+        } else if (packedJumps(m) > 0) {
+            return CAPTURE_RANK + packedJumps(m);
+        }
+        for (long killer : buffers.killers[depth]) {
+            if (m == killer) {
+                return KILLER_RANK;
             }
         }
-        return whiteCount - blackCount;
+        return buffers.history[packedFrom(m)][packedTo(m)];
+    }
+
+    /** Record in BUFFERS, those of the calling thread, that searching M
+     *  at DEPTH produced a cutoff. */
+    private void recordCutoff(Buffers buffers, long m, int depth) {
+        if (packedJumps(m) > 0) {
+            return;
+        }
+        long[] killers = buffers.killers[depth];
+        if (killers[0] != m) {
+            System.arraycopy(killers, 0, killers, 1, KILLERS - 1);
+            killers[0] = m;
+        }
+        int[] row = buffers.history[packedFrom(m)];
+        row[packedTo(m)] += depth * depth;
+        if (row[packedTo(m)] > HISTORY_LIMIT) {
+            for (int[] scores : buffers.history) {
+                for (int k = 0; k < scores.length; k += 1) {
+                    scores[k] /= 2;
+                }
+            }
+        }
+    }
+
+    /* A split search is a young-brothers-wait parallel alpha-beta search.
+     * At each node at least SPLIT_DEPTH levels above the leaves, the
+     * first move is searched alone, so that it can establish bounds for
+     * the others.  The remaining moves are then searched as parallel
+     * fork-join tasks, each on its own copy of the board and each with
+     * the window as it stood after the first move.  Once all have
+     * finished, their values are combined in move order as the serial
+     * search combines them, so that a move whose value only ties the
+     * best so far replaces it if that value is exact.  A task whose
+     * value produces a cutoff abandons the tasks for later moves (and
+     * their descendants), whose values would be ignored anyway; the
+     * tasks for earlier moves run to completion.  Nearer the leaves,
+     * tasks search serially with findMove.
+     *
+     * Nothing a task does depends on another task that is still running,
+     * so the search is deterministic.  The transposition table is only
+     * read while the search runs.  The entries for the nodes that were
+     * split are collected along with the values that produce them, and
+     * stored in tree order once the whole search has finished; the
+     * serial searches near the leaves store nothing.  Each task starts
+     * with no killer moves or history scores.  The value, the move
+     * chosen, and the count of positions given by nodes() therefore
+     * depend only on the position, the depth, the window, and the
+     * table's contents beforehand, and not on the number of threads or
+     * how they are scheduled (unless the deadline passes). */
+
+    /** Remaining depth below which a split search no longer splits. */
+    private static final int SPLIT_DEPTH = 3;
 
+    /** The state shared by the tasks searching the moves of one node of a
+     *  split search. */
+    private static class SplitNode {
+
+        /** A node searched by TASK. */
+        SplitNode(SplitTask task) {
+            _task = task;
+        }
+
+        /** Record that the value of the INDEXth move produces a
+         *  cutoff. */
+        synchronized void cutoff(int index) {
+            _cutoff = Math.min(_cutoff, index);
+        }
+
+        /** Return true iff the search of the INDEXth move need not
+         *  continue, because an earlier move produces a cutoff or because
+         *  this node is abandoned. */
+        boolean aborted(int index) {
+            return _cutoff < index || _task.aborted();
+        }
+
+        /** The search of which I am the root. */
+        private final SplitTask _task;
+        /** Index of the first move known to produce a cutoff, or
+         *  Integer.MAX_VALUE. */
+        private volatile int _cutoff = Integer.MAX_VALUE;
+    }
+
+    /** The search of one move of a split search, and what it finds. */
+    private static class SplitTask {
+
+        /** The search of the INDEXth move of NODE, or of the root if NODE
+         *  is null. */
+        SplitTask(SplitNode node, int index) {
+            _node = node;
+            _index = index;
+        }
+
+        /** Return true iff this search has been abandoned. */
+        boolean aborted() {
+            return _node != null && _node.aborted(_index);
+        }
+
+        /** The value found. */
+        int score;
+        /** The number of positions visited in finding score. */
+        long nodes;
+        /** Transposition table entries (key, data word, and move) to be
+         *  stored, in order, when the whole search has finished. */
+        final ArrayList<long[]> entries = new ArrayList<>();
+
+        /** The node one of whose moves I search, or null. */
+        private final SplitNode _node;
+        /** The index of my move in the move order of _node. */
+        private final int _index;
+    }
+
+    /** As for findMove(BOARD, DEPTH, SAVEMOVE, SENSE, ALPHA, BETA), but
+     *  splitting the search among the threads of _pool, as described
+     *  above.  Must be called from a task in _pool.  Adds the positions
+     *  visited and the table entries to be stored to TASK, the search of
+     *  which this is part.  The value returned is meaningless if TASK is
+     *  aborted or the search is stopped. */
+    private int splitFindMove(Board board, int depth, boolean saveMove,
+                              int sense, int alpha, int beta,
+                              SplitTask task) {
+        Buffers buffers = _buffers.get();
+        buffers.clearStatistics();
+        if (depth < SPLIT_DEPTH || !board.isMove()) {
+            long nodes0 = buffers.nodes;
+            int score = findMove(board, depth, saveMove, sense, alpha, beta);
+            task.nodes += buffers.nodes - nodes0;
+            return score;
+        }
+        task.nodes += 1;
+        if (searchStopped(buffers) || task.aborted()) {
+            return 0;
+        }
+        long key = board.hashKey();
+        long[] moves = new long[Board.MOVE_BUFFER_SIZE];
+        int n = board.getMoves(moves, true);
+        if (n > moves.length) {
+            moves = new long[n];
+            n = board.getMoves(moves, true);
+        }
+        orderMoves(moves, n, new int[n], tableMove(key), depth);
+
+        SplitNode node = new SplitNode(task);
+        SplitTask[] tasks = new SplitTask[n];
+        for (int i = 0; i < n; i += 1) {
+            tasks[i] = new SplitTask(node, i);
+        }
+        board.makeMove(moves[0]);
+        int first = splitFindMove(board, depth - 1, false, -sense,
+                                  alpha, beta, tasks[0]);
+        board.undo();
+        tasks[0].score = first;
+
+        int a = sense == 1 ? Math.max(alpha, first) : alpha;
+        int b = sense == 1 ? beta : Math.min(beta, first);
+        ArrayList<ForkJoinTask<Void>> forks = new ArrayList<>();
+        for (int i = 1; i < n && a < b; i += 1) {
+            int index = i;
+            long m = moves[i];
+            SplitTask t = tasks[i];
+            Board child = new Board(board);
+            forks.add(ForkJoinTask.adapt(() -> {
+                if (!t.aborted()) {
+                    child.makeMove(m);
+                    t.score = splitFindMove(child, depth - 1, false, -sense,
+                                            a, b, t);
+                    if (sense == 1 ? t.score >= b : t.score <= a) {
+                        node.cutoff(index);
+                    }
+                }
+            }, null));
+        }
+        ForkJoinTask.invokeAll(forks);
+        if (_stopped || task.aborted()) {
+            return 0;
+        }
+
+        long best = NO_MOVE;
+        int bestScore = 0;
+        int alpha0 = alpha, beta0 = beta;
+        for (int i = 0; i < n && alpha < beta; i += 1) {
+            int low = i == 0 ? alpha0 : a, high = i == 0 ? beta0 : b;
+            int response = tasks[i].score;
+            task.nodes += tasks[i].nodes;
+            task.entries.addAll(tasks[i].entries);
+            boolean exact = low < response && response < high;
+            boolean better =
+                sense == 1 ? response > bestScore : response < bestScore;
+            if (best == NO_MOVE || better
+                || (response == bestScore && exact)) {
+                best = moves[i];
+                bestScore = response;
+                if (sense == 1) {
+                    alpha = Math.max(alpha, response);
+                } else {
+                    beta = Math.min(beta, response);
+                }
+            }
+        }
+
+        task.entries.add(new long[] {
+            key, tableData(depth, bestScore, alpha0, beta0), best
+        });
+        if (saveMove) {
+            _lastFoundMove = unpack(best);
+        }
+        return bestScore;
+    }
+
+    /** Return a heuristic value for BOARD. set this equal to number of white
+     * pieces minus number of black.  Takes constant time apart from one
+     * check that the player to move has a move. */
+    public int staticScore(Board board) {
+        if (!board.isMove()) {
+            return board.whoseMove() == WHITE ? -INFTY : INFTY;
+        }
+        return board.material();
     }
 }
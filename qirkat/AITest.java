@@ -21,6 +21,9 @@ public class AITest {
         b0.setPieces("----- ----- ----w --bb- bb-bb", PieceColor.WHITE);
 
         assertEquals(A.staticScore(b0), -5);
+
+        b0.setPieces("----- ----- ----- ---w- -----", PieceColor.BLACK);
+        assertEquals(A.staticScore(b0), Integer.MAX_VALUE);
     }
 
 
@@ -225,4 +228,209 @@ public class AITest {
     }
 
 
+    @Test
+    public void testMoveTime() {
+        Board b0 = new Board();
+
+        Game game = new Game(b0,
+                new ReaderSource(new InputStreamReader(System.in),
+                        true),
+                new TextReporter());
+        game.doMoveTime(new String[] { "100" });
+        assertEquals(game.moveTime(), 100);
+
+        AI A = new AI(game, PieceColor.WHITE);
+        long start = System.currentTimeMillis();
+        Move m = A.findMove();
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertTrue(b0.legalMove(m));
+    }
+
+    @Test
+    public void testFixedDepth() {
+        Board b0 = new Board();
+        b0.setPieces("w-w-w bbbbb ----- bbbbb -----", PieceColor.WHITE);
+
+        Game game = new Game(b0,
+                new ReaderSource(new InputStreamReader(System.in),
+                        true),
+                new TextReporter());
+
+        AI A = new AI(game, PieceColor.WHITE);
+        Board b1 = new Board(b0);
+        Move m = A.findMove(b0, 4);
+        assertEquals(b1, b0);
+        assertTrue(b0.legalMove(m));
+    }
+
+    @Test
+    public void testManyCaptures() {
+        Board b0 = new Board();
+        b0.setPieces("-b-bwbbbbb-b-b-bbbbb-b-b-", PieceColor.WHITE);
+
+        Game game = new Game(b0,
+                new ReaderSource(new InputStreamReader(System.in),
+                        true),
+                new TextReporter());
+
+        AI A = new AI(game, PieceColor.WHITE);
+        assertTrue(b0.legalMove(A.findMove(b0, 3)));
+    }
+
+    @Test
+    public void testQuiescence() {
+        Board b0 = new Board();
+        b0.setPieces("----- -w--- ----- -b--- -----", PieceColor.WHITE);
+
+        Game game = new Game(b0,
+                new ReaderSource(new InputStreamReader(System.in),
+                        true),
+                new TextReporter());
+
+        AI A = new AI(game, PieceColor.WHITE);
+        Move m = A.findMove(b0, 1);
+        assertNotEquals(Move.parseMove("b2-b3"), m);
+        assertNotEquals(Move.parseMove("b2-c3"), m);
+    }
+
+    @Test
+    public void testSavedMoveValue() {
+        String[][] positions = {
+            { "----- ----- wb--w --b-- --bbb", "1" },
+            { "w-ww- -ww-w --b-w b-b-b bbb-b", "4" },
+            { "wwwww wbwww bb-ww bbb-b bbbbb", "4" },
+            { "----- --www ----- -bbb- --bb-", "4" },
+        };
+        Game game = new Game(new Board(),
+                new ReaderSource(new InputStreamReader(System.in),
+                        true),
+                new TextReporter());
+        for (String[] pos : positions) {
+            int depth = Integer.parseInt(pos[1]);
+            for (PieceColor side : new PieceColor[] {
+                    PieceColor.WHITE, PieceColor.BLACK }) {
+                Board b0 = new Board();
+                b0.setPieces(pos[0], side);
+                if (!b0.isMove()) {
+                    continue;
+                }
+                int value = new AI(game, side).findValue(b0, depth);
+                Move m = new AI(game, side).findMove(new Board(b0), depth);
+                b0.makeMove(m);
+                assertEquals(value,
+                             new AI(game, side).findValue(b0, depth - 1));
+            }
+        }
+        Board b1 = new Board();
+        b1.setPieces("----- ----- wb--w --b-- --bbb", PieceColor.BLACK);
+        assertNotEquals(Move.parseMove("e5-e4"),
+                        new AI(game, PieceColor.BLACK).findMove(b1, 1));
+    }
+
+    @Test
+    public void testThreads() {
+        Board b0 = new Board();
+        b0.setPieces("wwwww wbwww bb-ww bbb-b bbbbb", PieceColor.WHITE);
+
+        Game game = new Game(b0,
+                new ReaderSource(new InputStreamReader(System.in),
+                        true),
+                new TextReporter());
+        game.doMoveTime(new String[] { "200" });
+        game.doThreads(new String[] { "4" });
+        assertEquals(game.threads(), 4);
+
+        AI A = new AI(game, PieceColor.WHITE);
+        for (int i = 0; i < 3; i += 1) {
+            Move m = A.findMove();
+            assertTrue(b0.legalMove(m));
+        }
+    }
+
+    @Test
+    public void testForkJoin() {
+        Board b0 = new Board();
+        b0.setPieces("----- --www ----- -bbb- --bb-", PieceColor.WHITE);
+
+        Game game = new Game(b0,
+                new ReaderSource(new InputStreamReader(System.in),
+                        true),
+                new TextReporter());
+        game.doMoveTime(new String[] { "200" });
+        game.doThreads(new String[] { "4" });
+        game.doParallel(new String[] { "forkjoin" });
+        assertTrue(game.forkJoin());
+
+        AI A = new AI(game, PieceColor.WHITE);
+        for (int i = 0; i < 3; i += 1) {
+            Move m = A.findMove();
+            assertTrue(b0.legalMove(m));
+        }
+    }
+
+    @Test
+    public void testForkJoinDeterministic() {
+        String[] positions = {
+            "wwwww wwwww bb-ww bbbbb bbbbb",
+            "w-ww- -ww-w --b-w b-b-b bbb-b",
+            "wwwww wbwww bb-ww bbb-b bbbbb",
+        };
+        Game serial = new Game(new Board(),
+                new ReaderSource(new InputStreamReader(System.in),
+                        true),
+                new TextReporter());
+        Game[] split = new Game[3];
+        for (int i = 0; i < split.length; i += 1) {
+            split[i] = new Game(new Board(),
+                    new ReaderSource(new InputStreamReader(System.in),
+                            true),
+                    new TextReporter());
+            split[i].doThreads(new String[] { i == 0 ? "2" : "4" });
+            split[i].doParallel(new String[] { "forkjoin" });
+        }
+        for (String pos : positions) {
+            Board b0 = new Board();
+            b0.setPieces(pos, PieceColor.WHITE);
+            int value = new AI(serial, PieceColor.WHITE).findValue(b0, 6);
+            Move move = null;
+            long nodes = 0;
+            for (Game game : split) {
+                AI A = new AI(game, PieceColor.WHITE);
+                assertEquals(value, A.findValue(new Board(b0), 6));
+                A = new AI(game, PieceColor.WHITE);
+                Move m = A.findMove(new Board(b0), 6);
+                if (move == null) {
+                    move = m;
+                    nodes = A.nodes();
+                }
+                assertEquals(move, m);
+                assertEquals(nodes, A.nodes());
+            }
+            b0.makeMove(move);
+            assertEquals(value,
+                         new AI(serial, PieceColor.WHITE).findValue(b0, 5));
+        }
+    }
+
+    @Test
+    public void testOrderMoves() {
+        Board b0 = new Board();
+        b0.setPieces("----- -w--- -bbb- ----- -----", PieceColor.WHITE);
+
+        Game game = new Game(b0,
+                new ReaderSource(new InputStreamReader(System.in),
+                        true),
+                new TextReporter());
+        AI A = new AI(game, PieceColor.WHITE);
+
+        long[] moves = new long[Board.MOVE_BUFFER_SIZE];
+        int[] ranks = new int[Board.MOVE_BUFFER_SIZE];
+        int n = b0.getMoves(moves);
+        A.orderMoves(moves, n, ranks, Move.NO_MOVE, 1);
+        assertEquals(Move.parseMove("b2-b4-d2-d4"), Move.unpack(moves[0]));
+        long last = moves[n - 1];
+        A.orderMoves(moves, n, ranks, last, 1);
+        assertEquals(last, moves[0]);
+    }
+
 }
@@ -7,9 +7,8 @@ import java.util.Observer;
 
 import static qirkat.PieceColor.*;
 import static qirkat.Move.*;
-import java.util.Stack;
-import java.util.HashMap;
 import java.util.Arrays;
+import java.util.Random;
 
 /** A Qirkat board.   The squares are labeled by column (a char value between
  *  'a' and 'e') and row (a char value between '1' and '5').
@@ -26,19 +25,15 @@ class Board extends Observable {
 
     /** A new, cleared board at the start of the game. */
     Board() {
-        for (int i = 0; i < MAX_INDEX + 1; i++) {
-            _pieces.add(i, null);
-            _visitedSquares.put(i, new Stack<Integer>());
-        }
         _whoseMove = WHITE;
         _gameOver = false;
 
         setPieces(INIT_BOARD, _whoseMove);
     }
 
-    /** A copy of B. */
+    /** A copy of B, which shares B's history until either changes it
+     *  (see internalCopy). */
     Board(Board b) {
-        this();
         internalCopy(b);
     }
 
@@ -56,8 +51,7 @@ class Board extends Observable {
 
         setPieces(INIT_BOARD, _whoseMove);
 
-        setChanged();
-        notifyObservers();
+        announceChange();
     }
 
     /** Copy B into me. */
@@ -68,12 +62,24 @@ class Board extends Observable {
     /** Copy B into me. WAS PRIVATE */
 
     public void internalCopy(Board b) {
-        for (int i = 0; i < _pieces.size(); i++) {
-            _pieces.set(i, b._pieces.get(i));
-        }
-        this._madeMoves = b._madeMoves;
+        _whitePieces = b._whitePieces;
+        _blackPieces = b._blackPieces;
+        _key = b._key;
+        this._journalWhite = b._journalWhite;
+        this._journalBlack = b._journalBlack;
+        this._journalVisits = b._journalVisits;
+        this._journalKeys = b._journalKeys;
+        this._journalMoves = b._journalMoves;
+        this._journalSize = b._journalSize;
+        this._visitLogSquares = b._visitLogSquares;
+        this._visitLogValues = b._visitLogValues;
+        this._visitLogSize = b._visitLogSize;
+        this._historyShared = b._historyShared = true;
+        System.arraycopy(b._visited, 0, _visited, 0, _visited.length);
         this._whoseMove = b.whoseMove();
-        this._copying = b._copying;
+        this._jumpSources = b._jumpSources;
+        this._legalMask = UNKNOWN;
+        this._gameOver = b._gameOver;
     }
 
     /** Set my contents as defined by STR.  STR consists of 25 characters,
@@ -92,11 +98,11 @@ class Board extends Observable {
             throw new IllegalArgumentException("bad board description");
         }
 
-        for (int i = 0; i < _visitedSquares.size(); i++) {
-            _visitedSquares.put(i, new Stack<Integer>());
-        }
+        Arrays.fill(_visited, 0);
+        clearHistory();
 
         _whoseMove = nextMove;
+        positionChanged();
 
         for (int k = 0; k < str.length(); k += 1) {
             switch (str.charAt(k)) {
@@ -115,8 +121,7 @@ class Board extends Observable {
         }
 
 
-        setChanged();
-        notifyObservers();
+        announceChange();
     }
 
     /** Return true iff the game is over: i.e., if the current player has
@@ -132,11 +137,47 @@ class Board extends Observable {
         return get(index(c, r));
     }
 
+    /** Return the squares (as a bit mask of linearized indices) to which
+     *  the piece at linearized index K may not step back. */
+    int visited(int k) {
+        return _visited[k];
+    }
+
     /** Return the current contents of the square at linearized index K. */
     PieceColor get(int k) {
         assert validSquare(k);
-        PieceColor p = _pieces.get(k);
-        return _pieces.get(k);
+        int bit = 1 << k;
+        if ((_whitePieces & bit) != 0) {
+            return WHITE;
+        } else if ((_blackPieces & bit) != 0) {
+            return BLACK;
+        }
+        return EMPTY;
+    }
+
+    /** Return the set of squares holding pieces of color COLOR, as a
+     *  bit mask in which bit K stands for linearized index K. */
+    int pieces(PieceColor color) {
+        switch (color) {
+        case WHITE:
+            return _whitePieces;
+        case BLACK:
+            return _blackPieces;
+        default:
+            return ALL_SQUARES & ~(_whitePieces | _blackPieces);
+        }
+    }
+
+    /** Return the number of pieces of color COLOR on the board. */
+    int pieceCount(PieceColor color) {
+        return Integer.bitCount(pieces(color));
+    }
+
+    /** Return the number of white pieces minus the number of black
+     *  pieces.  The piece sets are kept up to date by each change to the
+     *  board, so this takes constant time. */
+    int material() {
+        return Integer.bitCount(_whitePieces) - Integer.bitCount(_blackPieces);
     }
 
     /** Set get(C, R) to V, where 'a' <= C <= 'e', and
@@ -150,48 +191,162 @@ class Board extends Observable {
      * i would say rely on this method to set */
     private void set(int k, PieceColor v) {
         assert validSquare(k);
-        _pieces.set(k, v);
+        int bit = 1 << k;
+        if ((_whitePieces & bit) != 0) {
+            _key ^= WHITE_KEYS[k];
+        } else if ((_blackPieces & bit) != 0) {
+            _key ^= BLACK_KEYS[k];
+        }
+        _whitePieces &= ~bit;
+        _blackPieces &= ~bit;
+        positionChanged();
+        if (v == WHITE) {
+            _whitePieces |= bit;
+            _key ^= WHITE_KEYS[k];
+        } else if (v == BLACK) {
+            _blackPieces |= bit;
+            _key ^= BLACK_KEYS[k];
+        }
+    }
+
+    /** Return a 64-bit Zobrist hash of the current position: the
+     *  contents of every square and the player to move.  Equal positions
+     *  have equal keys; the visited-square restrictions are not
+     *  included. */
+    long hashKey() {
+        return _whoseMove == BLACK ? _key ^ BLACK_TO_MOVE_KEY : _key;
     }
 
     /** Return true iff MOV is legal on the current board.
      * if mov is in getMoves() then it is a legal move*/
     boolean legalMove(Move mov) {
+        long move = Move.pack(mov);
+        return move != NO_MOVE && legalMove(move);
+    }
+
+    /** Return true iff packed move MOVE is legal on the current board.
+     *  The first call for a position generates its moves into a hash
+     *  table, so that this and later calls for the same position answer
+     *  for any generated move in constant time.  getMoves offers every
+     *  legal non-capture but, from each square, only one diagonal and one
+     *  orthogonal jump, so a capture that is not in the table is checked
+     *  directly with checkJump. */
+    boolean legalMove(long move) {
         if (gameOver()) {
             return false;
         }
-        if (get(mov.fromIndex()) == EMPTY
-                || get(mov.fromIndex()) == whoseMove().opposite()) {
-            return false;
-        } else if (!mov.isJump()) {
-            if (jumpPossible()) {
-                return false;
-
-            } else if (whoseMove() == WHITE) {
-                if (mov.row1() < mov.row0() || mov.fromIndex() > 19) {
-                    return false;
-                }
+        if (isGenerated(move)) {
+            return true;
+        }
+        return packedJumps(move) != 0 && checkMove(move);
+    }
 
-            } else if (whoseMove() == BLACK) {
-                if (mov.row1() > mov.row0() || mov.fromIndex() < 5) {
-                    return false;
+    /** Return true iff packed move MOVE is one of the moves from
+     *  getMoves for the current position, which must not be over. */
+    private boolean isGenerated(long move) {
+        if (_legalMoves == null) {
+            _legalMoves = new long[4 * MOVE_BUFFER_SIZE];
+            _generated = new long[MOVE_BUFFER_SIZE];
+        }
+        if (_legalMask == UNKNOWN) {
+            int n = getMoves(_generated);
+            if (n > _generated.length) {
+                _generated = new long[n];
+                getMoves(_generated);
+            }
+            _legalMask = Integer.highestOneBit(2 * n + 1) * 2 - 1;
+            if (_legalMask >= _legalMoves.length) {
+                _legalMoves = new long[_legalMask + 1];
+            }
+            Arrays.fill(_legalMoves, 0, _legalMask + 1, NO_MOVE);
+            for (int i = 0; i < n; i += 1) {
+                int h = legalSlot(_generated[i]);
+                while (_legalMoves[h] != NO_MOVE) {
+                    h = (h + 1) & _legalMask;
                 }
+                _legalMoves[h] = _generated[i];
             }
-            if (_visitedSquares.get(mov.fromIndex()).contains(mov.toIndex())) {
-                return false;
-
-            } else if (_pieces.get(mov.toIndex()) != EMPTY) {
-                return false;
+        }
+        for (int h = legalSlot(move); _legalMoves[h] != NO_MOVE;
+             h = (h + 1) & _legalMask) {
+            if (_legalMoves[h] == move) {
+                return true;
             }
+        }
+        return false;
+    }
 
-        } else if (mov.isJump()) {
-            if (_copying) {
-                return checkJump(mov, true);
-            } else {
-                return checkJump(mov, false);
+    /** Return the first slot of _legalMoves to probe for packed move
+     *  MOVE. */
+    private int legalSlot(long move) {
+        return (int) ((move * 0x9E3779B97F4A7C15L) >>> 40) & _legalMask;
+    }
+
+    /** Record that the pieces, the player to move, or the visited squares
+     *  have changed, so that the cached jump sources and legal moves no
+     *  longer apply.  Benchmarks also call this to measure computing
+     *  them. */
+    void positionChanged() {
+        _jumpSources = UNKNOWN;
+        _legalMask = UNKNOWN;
+    }
+
+    /** Return true iff packed move MOVE is legal on the current board,
+     *  checking it directly rather than generating moves. */
+    private boolean checkMove(long move) {
+        if (gameOver()) {
+            return false;
+        }
+        int from = packedFrom(move);
+        if (get(from) != whoseMove()) {
+            return false;
+        } else if (packedJumps(move) == 0) {
+            int dir = packedDirection(move, 0);
+            int to = NEIGHBOR[from][dir];
+            if (jumpPossible() || (stepFrom()[dir] & (1 << from)) == 0) {
+                return false;
+            } else if ((_visited[from] & (1 << to)) != 0) {
+                return false;
+            } else if (get(to) != EMPTY) {
+                return false;
             }
+        } else {
+            return checkJump(move, false);
         }
         return true;
+    }
 
+    /** Return the number of positions reached by playing each sequence
+     *  of DEPTH legal moves from the current position (1 if DEPTH is 0).
+     *  Sequences that end the game early are not counted.  Leaves this
+     *  Board as it was, but notifies its observers of each move. */
+    long perft(int depth) {
+        return perft(depth,
+                     new long[Math.max(depth, 1)][MOVE_BUFFER_SIZE]);
+    }
+
+    /** As for perft(DEPTH), generating moves at each level I into
+     *  BUFFERS[I - 1]. */
+    private long perft(int depth, long[][] buffers) {
+        if (depth == 0) {
+            return 1;
+        }
+        long[] moves = buffers[depth - 1];
+        int n = getMoves(moves);
+        if (n > moves.length) {
+            moves = buffers[depth - 1] = new long[n];
+            getMoves(moves);
+        }
+        if (depth == 1) {
+            return n;
+        }
+        long total = 0;
+        for (int i = 0; i < n; i += 1) {
+            makeMove(moves[i]);
+            total += perft(depth - 1, buffers);
+            undo();
+        }
+        return total;
     }
 
     /** Return a list of all legal moves from the current position. */
@@ -203,229 +358,391 @@ class Board extends Observable {
 
     /** Add all legal moves from the current position to MOVES. */
     void getMoves(ArrayList<Move> moves) {
+        long[] packed = new long[MOVE_BUFFER_SIZE];
+        int n = getMoves(packed);
+        if (n > packed.length) {
+            packed = new long[n];
+            getMoves(packed);
+        }
+        for (int i = 0; i < n; i += 1) {
+            moves.add(Move.unpack(packed[i]));
+        }
+    }
+
+    /** Store all legal moves from the current position in MOVES, packed
+     *  as described in Move, and return their number.  If that number
+     *  is greater than the length of MOVES, only as many as fit are
+     *  stored, and the caller should try again with a larger array
+     *  (MOVE_BUFFER_SIZE is almost always enough).  Allocates nothing, so
+     *  that the AI can generate moves into buffers it keeps for each
+     *  level of its search.  The moves are in the same order as from
+     *  getJumps (for each square in turn) or getNonJumps. */
+    int getMoves(long[] moves) {
+        return getMoves(moves, false);
+    }
+
+    /** As for getMoves(MOVES), but if DISTINCT, store only the first of
+     *  any captures that start and end on the same squares and capture
+     *  the same pieces.  Such captures differ only in the order of their
+     *  jumps, and lead to the same position. */
+    int getMoves(long[] moves, boolean distinct) {
         if (gameOver()) {
-            return;
+            return 0;
+        }
+        int n = getCaptures(moves);
+        if (n == 0) {
+            return getNonJumps(moves);
         }
-        if (jumpPossible()) {
-            for (int k = 0; k <= MAX_INDEX; k += 1) {
-                getJumps(moves, k);
+        if (!distinct || n > moves.length) {
+            return n;
+        }
+        return distinctCaptures(moves, n, NO_MOVE);
+    }
+
+    /** Remove from the first N captures in MOVES each one that leads to
+     *  the same position as an earlier one or as FIRST (NO_MOVE for
+     *  none), keeping the others in order, and return their number. */
+    private static int distinctCaptures(long[] moves, int n, long first) {
+        int count = 0;
+        for (int i = 0; i < n; i += 1) {
+            long key = captureKey(moves[i]);
+            boolean seen = first != NO_MOVE && key == captureKey(first)
+                && moves[i] != first;
+            for (int j = 0; j < count && !seen; j += 1) {
+                seen = key == captureKey(moves[j]);
             }
-        } else {
-            for (int k = 0; k <= MAX_INDEX; k += 1) {
-                getMoves(moves, k);
+            if (!seen) {
+                moves[count] = moves[i];
+                count += 1;
             }
         }
+        return count;
     }
 
-    /** Add all legal non-capturing moves from the position
-     *  with linearized index K to MOVES. */
-    private void getMoves(ArrayList<Move> moves, int k) {
-        if (get(k) != whoseMove()) {
-            return;
+    /** Return a value that is the same for two packed captures iff they
+     *  start and end on the same squares and capture the same pieces. */
+    private static long captureKey(long capture) {
+        return packedFrom(capture) | packedTo(capture) << 5
+            | (long) packedCaptures(capture) << 10;
+    }
+
+    /** Store all legal captures from the current position in MOVES, as
+     *  for getMoves(MOVES), and return their number (0 if the game is
+     *  over or no capture is possible), which may be greater than the
+     *  length of MOVES. */
+    private int getCaptures(long[] moves) {
+        if (gameOver()) {
+            return 0;
         }
-        if (k % 2 == 0) {
-            if (whoseMove() == WHITE && validSquare(k + 6)
-                    && col(k + 6) == (char) (col(k) + 1)
-                    && row(k + 6) == (char) (row(k) + 1)) {
-                PieceColor diagupright = get(k + 6);
-                if (!diagupright.isPiece()) {
-                    Move mdiagupright = Move.move(col(k), row(k),
-                            col(k + 6), row(k + 6));
-                    if (legalMove(mdiagupright)) {
-                        moves.add(mdiagupright);
-                    }
-                }
-            }
-            if (whoseMove() == WHITE && validSquare(k + 4)
-                    && col(k + 4) == (char) (col(k) - 1)
-                    && row(k + 4) == (char) (row(k) + 1)) {
-                PieceColor diagupleft = get(k + 4);
-                if (!diagupleft.isPiece()) {
-                    Move mdiagupleft = Move.move(col(k), row(k),
-                            col(k + 4), row(k + 4));
-                    if (legalMove(mdiagupleft)) {
-                        moves.add(mdiagupleft);
-                    }
-                }
-            }
-            if (whoseMove() == BLACK && validSquare(k - 6)
-                    && col(k - 6) == (char) (col(k) - 1)
-                    && row(k - 6) == (char) (row(k) - 1)) {
-                PieceColor diagdownleft = get(k - 6);
-                if (!diagdownleft.isPiece()) {
-                    Move mdiagdownleft = Move.move(col(k), row(k),
-                            col(k - 6), row(k - 6));
-                    if (legalMove(mdiagdownleft)) {
-                        moves.add(mdiagdownleft);
+        int sources = jumpSources();
+        int mine = pieces(_whoseMove), theirs = pieces(_whoseMove.opposite());
+        int count = 0;
+        for (; sources != 0; sources &= sources - 1) {
+            int k = Integer.numberOfTrailingZeros(sources);
+            count = addJumps(moves, count, k, k, mine, theirs);
+        }
+        return count;
+    }
+
+    /** Return true iff the player to move has a legal move.  Unlike
+     *  isMove, does not record the end of the game.  Stops at the first
+     *  square found with a capture or step, without generating moves. */
+    boolean hasAnyLegalMove() {
+        return !gameOver() && (jumpPossible() || stepPossible());
+    }
+
+    /** Iterates over the legal moves from a position, packed as
+     *  described in Move, in stages: first a given move (typically the
+     *  best move found by an earlier search), if it is legal; then the
+     *  captures; then, if there are no captures, the non-capturing
+     *  moves.  Each stage is generated only when the previous one is
+     *  exhausted, so a search that is cut off after the first move
+     *  generates nothing.  An iterator may be reused for any number of
+     *  positions, and allocates nothing after it is created.  If
+     *  setDistinct(true) has been called, captures that lead to the same
+     *  position as one already returned are skipped (see getMoves(long[],
+     *  boolean)). */
+    static class MoveIterator {
+
+        /** Skip captures that repeat the result of another iff
+         *  DISTINCT. */
+        void setDistinct(boolean distinct) {
+            _distinct = distinct;
+        }
+
+        /** Start iterating over the legal moves from BOARD, beginning
+         *  with FIRST (NO_MOVE for none) if it is legal.  BOARD must not
+         *  change during the iteration, except by moves that are undone
+         *  before the next call to next(). */
+        void start(Board board, long first) {
+            _board = board;
+            _first = first;
+            _stage = board.gameOver() ? DONE : FIRST;
+            _next = _count = 0;
+        }
+
+        /** Return the next move, or NO_MOVE if there are no more. */
+        long next() {
+            while (true) {
+                if (_next < _count) {
+                    long m = _moves[_next];
+                    _next += 1;
+                    if (m != _first) {
+                        return m;
                     }
-                }
-            }
-            if (whoseMove() == BLACK && validSquare(k - 4)
-                    && col(k - 4) == (char) (col(k) + 1)
-                    && row(k - 4) == (char) (row(k) - 1)) {
-                PieceColor diagdownright = get(k - 4);
-                if (!diagdownright.isPiece()) {
-                    Move mdiagdownright = Move.move(col(k), row(k),
-                            col(k - 4), row(k - 4));
-                    if (legalMove(mdiagdownright)) {
-                        moves.add(mdiagdownright);
+                } else {
+                    switch (_stage) {
+                    case FIRST:
+                        _stage = CAPTURES;
+                        if (_first != NO_MOVE && _board.checkMove(_first)) {
+                            return _first;
+                        }
+                        _first = NO_MOVE;
+                        break;
+                    case CAPTURES:
+                        _count = _board.getCaptures(_moves);
+                        if (_count > _moves.length) {
+                            _moves = new long[_count];
+                            _board.getCaptures(_moves);
+                        }
+                        _stage = _count > 0 ? DONE : QUIETS;
+                        if (_distinct) {
+                            _count = distinctCaptures(_moves, _count, _first);
+                        }
+                        _next = 0;
+                        order(_moves, _count);
+                        break;
+                    case QUIETS:
+                        _count = _board.getNonJumps(_moves);
+                        _stage = DONE;
+                        _next = 0;
+                        order(_moves, _count);
+                        break;
+                    default:
+                        return NO_MOVE;
                     }
                 }
             }
+        }
 
+        /** Put the first N MOVES, which make up one stage, into the order
+         *  in which next() should return them.  By default, leaves them
+         *  in the order generated by getMoves. */
+        void order(long[] moves, int n) {
         }
-        if (validSquare(k + 1) && col(k + 1) == (char) (col(k) + 1)) {
-            PieceColor right = get(k + 1);
-            if (!right.isPiece()) {
-                Move mright = Move.move(col(k), row(k),
-                        col(k + 1), row(k));
-                if (legalMove(mright)) {
-                    moves.add(mright);
+
+        /** The stages of iteration. */
+        private static final int FIRST = 0, CAPTURES = 1, QUIETS = 2,
+            DONE = 3;
+
+        /** True iff I skip captures that repeat the result of another. */
+        private boolean _distinct;
+        /** The Board whose moves I return. */
+        private Board _board;
+        /** The move returned first, or NO_MOVE. */
+        private long _first;
+        /** The next stage to generate. */
+        private int _stage;
+        /** The moves of the current stage (enlarged when they do not
+         *  fit). */
+        private long[] _moves = new long[MOVE_BUFFER_SIZE];
+        /** Index in _moves of the next move to return. */
+        private int _next;
+        /** Number of moves in the current stage. */
+        private int _count;
+    }
+
+    /** Store all legal non-capturing moves from the current position in
+     *  MOVES, assuming no capture is possible, and return their number.
+     *  The moves from each square are stored in turn, by increasing
+     *  linearized index and then by direction. */
+    private int getNonJumps(long[] moves) {
+        int mine = pieces(whoseMove())
+            & ~(whoseMove() == WHITE ? ROW_5 : ROW_1);
+        int empty = pieces(EMPTY);
+        int[] dirs = whoseMove() == WHITE ? WHITE_STEPS : BLACK_STEPS;
+        int[] from = stepFrom();
+        int count = 0;
+        for (; mine != 0; mine &= mine - 1) {
+            int k = Integer.numberOfTrailingZeros(mine);
+            for (int d : dirs) {
+                if (canStep(k, d, from, empty)) {
+                    moves[count] = packedStep(k, d);
+                    count += 1;
                 }
             }
         }
+        return count;
+    }
 
-        if (validSquare(k - 1) && col(k - 1) == (char) (col(k) - 1)) {
-            PieceColor left = get(k - 1);
-            if (!left.isPiece()) {
-                Move mleft = Move.move(col(k), row(k), col(k - 1), row(k));
-                if (legalMove(mleft)) {
-                    moves.add(mleft);
+    /** Return true iff the player to move has a non-capturing move. */
+    private boolean stepPossible() {
+        int mine = pieces(whoseMove())
+            & ~(whoseMove() == WHITE ? ROW_5 : ROW_1);
+        int empty = pieces(EMPTY);
+        int[] dirs = whoseMove() == WHITE ? WHITE_STEPS : BLACK_STEPS;
+        int[] from = stepFrom();
+        for (; mine != 0; mine &= mine - 1) {
+            int k = Integer.numberOfTrailingZeros(mine);
+            for (int d : dirs) {
+                if (canStep(k, d, from, empty)) {
+                    return true;
                 }
             }
         }
-        if (whoseMove() == WHITE && validSquare(k + 5)
-                && row(k + 5) == (char) (row(k) + 1)) {
-            PieceColor up = get(k + 5);
-            if (!up.isPiece()) {
-                Move mup = Move.move(col(k), row(k), col(k), row(k + 5));
-                if (legalMove(mup)) {
-                    moves.add(mup);
-                }
+        return false;
+    }
+
+    /** Return true iff the piece at linearized index K may step in
+     *  direction D (an index into STEPS), given that FROM[D] is the set of
+     *  squares from which its owner may step in direction D and the empty
+     *  squares are EMPTY: the step ends on an empty square, and does not
+     *  return the piece to a square it has just left. */
+    private boolean canStep(int k, int d, int[] from, int empty) {
+        int to = NEIGHBOR[k][d];
+        return (from[d] & (1 << k)) != 0 && (empty & (1 << to)) != 0
+            && (_visited[k] & (1 << to)) == 0;
+    }
+
+    /** Return the sets of squares from which the player to move may step
+     *  in each direction of STEPS. */
+    private int[] stepFrom() {
+        return _whoseMove == WHITE ? WHITE_STEP_FROM : BLACK_STEP_FROM;
+    }
+
+    /** Store in MOVES, starting at index COUNT, each complete capture
+     *  that consists of the jumps in packed move CHAIN (or, if it has no
+     *  jumps yet, starts at linearized index CHAIN) followed by jumps
+     *  from square K, where the mover's pieces are then MINE and the
+     *  opponent's THEIRS.  Return the new count, which counts the
+     *  captures that do not fit in MOVES as well.  As in findSingleJumps, a
+     *  chain continues with at most one diagonal and one orthogonal jump
+     *  (the first possible in JUMP_ORDER), the orthogonal one being
+     *  explored first, and a chain is complete only where no further jump
+     *  is possible. */
+    private int addJumps(long[] moves, int count, long chain, int k,
+                         int mine, int theirs) {
+        int diagonal = jumpDirection(JUMP_ORDER[0], k, mine, theirs);
+        int orthogonal = jumpDirection(JUMP_ORDER[1], k, mine, theirs);
+        if (diagonal < 0 && orthogonal < 0) {
+            if (count < moves.length) {
+                moves[count] = chain;
             }
+            return count + 1;
         }
+        if (orthogonal >= 0) {
+            count = addJump(moves, count, chain, k, orthogonal, mine, theirs);
+        }
+        if (diagonal >= 0) {
+            count = addJump(moves, count, chain, k, diagonal, mine, theirs);
+        }
+        return count;
+    }
 
-        if (whoseMove() == BLACK && validSquare(k - 5)
-                && row(k - 5) == (char) (row(k) - 1)) {
-            PieceColor down = get(k - 5);
-            if (!down.isPiece()) {
-                Move mdown = Move.move(col(k), row(k), col(k), row(k - 5));
-                if (legalMove(mdown)) {
-                    moves.add(mdown);
-                }
+    /** As for addJumps(MOVES, COUNT, CHAIN, K, MINE, THEIRS), but only
+     *  for captures continuing with a jump from K in direction D. */
+    private int addJump(long[] moves, int count, long chain, int k, int d,
+                        int mine, int theirs) {
+        int over = JUMP_OVER[k][d], to = JUMP_TO[k][d];
+        return addJumps(moves, count, packedJump(chain, d), to,
+                        (mine & ~(1 << k)) | (1 << to), theirs & ~(1 << over));
+    }
+
+    /** Return the first direction among DIRS in which the piece at
+     *  linearized index K can jump when the mover's pieces are MINE and
+     *  the opponent's THEIRS, or -1 if there is none. */
+    private static int jumpDirection(int[] dirs, int k, int mine,
+                                     int theirs) {
+        int empty = ALL_SQUARES & ~(mine | theirs);
+        for (int d : dirs) {
+            int to = JUMP_TO[k][d];
+            if (to >= 0 && (theirs & (1 << JUMP_OVER[k][d])) != 0
+                && (empty & (1 << to)) != 0) {
+                return d;
             }
         }
+        return -1;
     }
 
-    /** finds single jumps for a position on the board. */
+    /** finds single jumps for a position on the board.  At most one
+     *  diagonal jump (trying up-left, up-right, down-right, then
+     *  down-left) and one orthogonal jump (left, up, right, then down)
+     *  are returned. */
     public ArrayList<Move> findSingleJumps(char c, char r) {
         ArrayList<Move> singlejumps = new ArrayList<Move>();
         if (get(c, r) == EMPTY
                 || get(c, r) == _whoseMove.opposite()) {
             return null;
         }
-
-        char cleft = (char) (c - 1);
-        char cleft2 = (char) (cleft - 1);
-
-        char cright = (char) (c + 1);
-        char cright2 = (char) (cright + 1);
-
-        char rup = (char) (r + 1);
-        char rup2 = (char) (rup + 1);
-
-        char rdown = (char) (r - 1);
-        char rdown2 = (char) (rdown - 1);
-
-        if (index(c, r) % 2 == 0) {
-            if (validSquare(cleft, rup) && validSquare(cleft2, rup2)
-                    && get(cleft2, rup2) == EMPTY
-                    && get(cleft, rup) == _whoseMove.opposite()) {
-                singlejumps.add(Move.move(c, r, cleft2, rup2));
-            } else if (validSquare(cright, rup) && validSquare(cright2, rup2)
-                    && get(cright2, rup2) == EMPTY
-                    && get(cright, rup) == _whoseMove.opposite()) {
-                singlejumps.add(Move.move(c, r, cright2, rup2));
-            } else if (validSquare(cright, rdown)
-                    && validSquare(cright2, rdown2)
-                    && get(cright2, rdown2) == EMPTY
-                    && get(cright, rdown) == _whoseMove.opposite()) {
-                singlejumps.add(Move.move(c, r, cright2, rdown2));
-            } else if (validSquare(cleft, rdown) && validSquare(cleft2, rdown2)
-                    && get(cleft2, rdown2) == EMPTY
-                    && get(cleft, rdown) == _whoseMove.opposite()) {
-                singlejumps.add(Move.move(c, r, cleft2, rdown2));
+        int k = index(c, r);
+        int bit = 1 << k;
+        for (int[] group : JUMP_ORDER) {
+            for (int d : group) {
+                if ((jumpSources(d) & bit) != 0) {
+                    int to = JUMP_TO[k][d];
+                    singlejumps.add(Move.move(c, r, col(to), row(to)));
+                    break;
+                }
             }
         }
-        if (validSquare(cleft, r) && validSquare(cleft2, r)
-                && get(cleft2, r) == EMPTY
-                && get(cleft, r) == _whoseMove.opposite()) {
-            singlejumps.add(Move.move(c, r, cleft2, r));
-        } else if (validSquare(c, rup) && validSquare(c, rup2)
-                && get(c, rup2) == EMPTY
-                && get(c, rup) == _whoseMove.opposite()) {
-            singlejumps.add(Move.move(c, r, c, rup2));
-        } else if (validSquare(cright, r) && validSquare(cright2, r)
-                && get(cright2, r) == EMPTY
-                && get(cright, r) == _whoseMove.opposite()) {
-            singlejumps.add(Move.move(c, r, cright2, r));
-        } else if (validSquare(c, rdown) && validSquare(c, rdown2)
-                && get(c, rdown2) == EMPTY
-                && get(c, rdown) == _whoseMove.opposite()) {
-            singlejumps.add(Move.move(c, r, c, rdown2));
-        }
-
         return singlejumps;
 
     }
 
+    /** Return the set of squares from which the player to move can
+     *  capture by jumping in direction D (an index into STEPS). */
+    private int jumpSources(int d) {
+        int step = STEPS[d];
+        return pieces(_whoseMove) & JUMP_FROM[d]
+            & shift(pieces(_whoseMove.opposite()), -step)
+            & shift(pieces(EMPTY), -2 * step);
+    }
+
+    /** Return the set of squares from which the player to move can
+     *  capture.  The set is computed at most once per position: it is
+     *  cached in _jumpSources until the pieces or the player to move
+     *  change. */
+    private int jumpSources() {
+        if (_jumpSources == UNKNOWN) {
+            int result = 0;
+            for (int d = 0; d < STEPS.length; d += 1) {
+                result |= jumpSources(d);
+            }
+            _jumpSources = result;
+        }
+        return _jumpSources;
+    }
+
+    /** Return SET shifted by N squares: toward higher linearized indices
+     *  if N > 0, and toward lower ones otherwise.  Squares shifted off the
+     *  board are discarded. */
+    private static int shift(int set, int n) {
+        if (n >= 0) {
+            return (set << n) & ALL_SQUARES;
+        }
+        return set >>> -n;
+    }
+
 
     /** Add all legal captures from the position with linearized index K
-     *  to MOVES. */
+     *  to MOVES.  The chains are enumerated depth first by addJumps,
+     *  which applies each jump to the piece sets it passes down rather
+     *  than to a copy of the board, and records only maximal chains. */
     public void getJumps(ArrayList<Move> moves, int k) {
-        _copying = true;
-        Board copy = new Board(this);
         if (!jumpPossible(k)) {
             return;
         }
-        ArrayList<Move> singlejumps = copy.findSingleJumps(col(k), row(k));
-        Stack<Move> jumps = new Stack<Move>();
-        for (Move m : singlejumps) {
-            jumps.push(m);
-        }
-        singlejumps.clear();
-        while (!jumps.empty()) {
-            copy = new Board(this);
-            Move j0 = jumps.pop();
-            PieceColor t = whoseMove();
-            PieceColor w = copy.whoseMove();
-            copy.makeMove(j0);
-            PieceColor w2 = copy.whoseMove();
-            if (copy.whoseMove() != whoseMove()) {
-                copy._whoseMove = whoseMove();
-            }
-            int jumpToIndex = j0.toIndex();
-
-            Move pointer = j0;
-            while (pointer != null) {
-                jumpToIndex = pointer.toIndex();
-                pointer = pointer.jumpTail();
-            }
-
-
-            if (!copy.jumpPossible(jumpToIndex)) {
-                moves.add(j0);
-            } else {
-                singlejumps = copy.findSingleJumps(col(jumpToIndex),
-                        row(jumpToIndex));
-                for (Move j : singlejumps) {
-                    jumps.add(Move.move(j0, j));
-                }
-            }
-
+        long[] chains = new long[MOVE_BUFFER_SIZE];
+        int n = addJumps(chains, 0, k, k, pieces(_whoseMove),
+                         pieces(_whoseMove.opposite()));
+        if (n > chains.length) {
+            chains = new long[n];
+            addJumps(chains, 0, k, k, pieces(_whoseMove),
+                     pieces(_whoseMove.opposite()));
+        }
+        for (int i = 0; i < n; i += 1) {
+            moves.add(Move.unpack(chains[i]));
         }
-        _copying = false;
-
     }
 
     /** Return true iff MOV is a valid jump sequence on the current board.
@@ -435,139 +752,50 @@ class Board extends Observable {
         if (mov == null) {
             return true;
         }
-        if (allowPartial) {
-            if (_pieces.get(mov.jumpedIndex()) != _whoseMove.opposite()) {
-                return false;
-            } else if (_pieces.get(mov.toIndex()) != EMPTY) {
-                return false;
-            } else if (mov.fromIndex() % 2 == 1) {
-                int toIndex = mov.toIndex();
-                int fromIndex = mov.fromIndex();
-                ArrayList<Integer> diagtoIndexIndex = new ArrayList<Integer>();
-                diagtoIndexIndex.addAll(Arrays.asList(fromIndex + 12,
-                        fromIndex - 12, fromIndex + 8, fromIndex - 8));
-                if (diagtoIndexIndex.contains(toIndex)) {
-                    return false;
-                }
-            }
-        } else if (!allowPartial) {
-            if (!checkJump(mov, true)) {
-                return false;
-            }
-            Move pointer = mov;
-            PieceColor start;
-            int startindex;
-            int endindex;
-            Board copy = new Board(this);
-            while (pointer.jumpTail() != null) {
-                if (!copy.checkJump(pointer, true)) {
-                    return false;
-                }
-                start = copy.get(pointer.col0(), pointer.row0());
-                startindex = index(pointer.col0(), pointer.row0());
-                endindex = index(pointer.col1(), pointer.row1());
-                int jumpedIndex = pointer.jumpedIndex();
-                copy.set(jumpedIndex, EMPTY);
-                copy.set(endindex, start);
-                copy.set(startindex, EMPTY);
-                pointer = pointer.jumpTail();
-            }
-            if (!copy.checkJump(pointer, true)) {
-                return false;
-            }
-            start = copy.get(pointer.col0(), pointer.row0());
-            startindex = index(pointer.col0(), pointer.row0());
-            endindex = index(pointer.col1(), pointer.row1());
-            int jumpedIndex = pointer.jumpedIndex();
-            copy.set(jumpedIndex, EMPTY);
-            copy.set(endindex, start);
-            copy.set(startindex, EMPTY);
-            if (copy.jumpPossible(pointer.toIndex())) {
+        long move = Move.pack(mov);
+        return move != NO_MOVE && checkJump(move, allowPartial);
+    }
+
+    /** Return true iff the packed jump MOVE is valid on the current board.
+     *  If ALLOWPARTIAL, only its first jump is checked, so that jumps
+     *  that could be continued (or are invalid after the first) are
+     *  allowed.  Otherwise, each jump must capture an opposing piece and
+     *  land on an empty square, and no further jump may be possible from
+     *  the final square. */
+    boolean checkJump(long move, boolean allowPartial) {
+        int mine = pieces(_whoseMove), theirs = pieces(_whoseMove.opposite());
+        int k = packedFrom(move);
+        int n = allowPartial ? 1 : packedJumps(move);
+        for (int i = 0; i < n; i += 1) {
+            int d = packedDirection(move, i);
+            int over = JUMP_OVER[k][d], to = JUMP_TO[k][d];
+            if (to < 0 || (theirs & (1 << over)) == 0
+                || ((mine | theirs) & (1 << to)) != 0) {
                 return false;
             }
+            mine = (mine & ~(1 << k)) | (1 << to);
+            theirs &= ~(1 << over);
+            k = to;
         }
-        return true;
+        return allowPartial
+            || (jumpDirection(JUMP_ORDER[0], k, mine, theirs) < 0
+                && jumpDirection(JUMP_ORDER[1], k, mine, theirs) < 0);
     }
 
     /** Return true iff a jump is possible for a piece at position C R. */
     boolean jumpPossible(char c, char r) {
-
-        if (get(c, r) == EMPTY || get(c, r) == _whoseMove.opposite()) {
-            return false;
-        }
-
-        char cleft = (char) (c - 1);
-        char cleft2 = (char) (cleft - 1);
-
-        char cright = (char) (c + 1);
-        char cright2 = (char) (cright + 1);
-
-        char rup = (char) (r + 1);
-        char rup2 = (char) (rup + 1);
-
-        char rdown = (char) (r - 1);
-        char rdown2 = (char) (rdown - 1);
-
-        if (index(c, r) % 2 == 0) {
-            if (validSquare(cleft, rup)
-                    && validSquare(cleft2, rup2) && get(cleft2, rup2) == EMPTY
-                    && get(cleft, rup) == _whoseMove.opposite()) {
-                return true;
-            } else if (validSquare(cright, rup) && validSquare(cright2, rup2)
-                    && get(cright2, rup2) == EMPTY
-                    && get(cright, rup) == _whoseMove.opposite()) {
-                return true;
-            } else if (validSquare(cright, rdown)
-                    && validSquare(cright2, rdown2)
-                    && get(cright2, rdown2) == EMPTY
-                    && get(cright, rdown) == _whoseMove.opposite()) {
-                return true;
-            } else if (validSquare(cleft, rdown) && validSquare(cleft2, rdown2)
-                    && get(cleft2, rdown2) == EMPTY
-                    && get(cleft, rdown) == _whoseMove.opposite()) {
-                return true;
-            }
-        }
-
-        if (validSquare(cleft, r) && validSquare(cleft2, r)
-                && get(cleft2, r) == EMPTY
-                && get(cleft, r) == _whoseMove.opposite()) {
-            return true;
-        } else if (validSquare(c, rup) && validSquare(c, rup2)
-                && get(c, rup2) == EMPTY
-                && get(c, rup) == _whoseMove.opposite()) {
-            return true;
-        } else if (validSquare(cright, r) && validSquare(cright2, r)
-                && get(cright2, r) == EMPTY
-                && get(cright, r) == _whoseMove.opposite()) {
-            return true;
-        } else if (validSquare(c, rdown) && validSquare(c, rdown2)
-                && get(c, rdown2) == EMPTY
-                && get(c, rdown) == _whoseMove.opposite()) {
-            return true;
-        }
-
-        return false;
-
+        return jumpPossible(index(c, r));
     }
 
     /** Return true iff a jump is possible for a piece at position with
      *  linearized index K. */
     boolean jumpPossible(int k) {
-        char c = col(k);
-        char r = row(k);
-
-        return jumpPossible(c, r);
+        return (jumpSources() & (1 << k)) != 0;
     }
 
     /** Return true iff a jump is possible from the current board. */
     boolean jumpPossible() {
-        for (int k = 0; k <= MAX_INDEX; k += 1) {
-            if (jumpPossible(k)) {
-                return true;
-            }
-        }
-        return false;
+        return jumpSources() != 0;
     }
 
     /** Return the color of the player who has the next move.  The
@@ -591,117 +819,150 @@ class Board extends Observable {
 
     /** Make the Move MOV on this Board, assuming it is legal. */
     void makeMove(Move mov) {
+        makeMove(Move.pack(mov));
+    }
 
-        assert legalMove(mov);
-        PieceColor start = get(mov.col0(), mov.row0());
-        int startindex = index(mov.col0(), mov.row0());
-        int endindex = index(mov.col1(), mov.row1());
-
-        if (!mov.isJump()) {
-            set(endindex, start);
-            set(startindex, EMPTY);
-            setVisitedSquares(startindex, endindex, mov);
-
-        } else if (mov.isJump()) {
-            Move pointer = mov;
-            while (pointer.jumpTail() != null) {
-
-                start = get(pointer.col0(), pointer.row0());
-                startindex = index(pointer.col0(), pointer.row0());
-                endindex = index(pointer.col1(), pointer.row1());
-
-                int jumpedIndex = pointer.jumpedIndex();
-                set(jumpedIndex, EMPTY);
-                set(endindex, start);
-                set(startindex, EMPTY);
-                PieceColor p = get(endindex);
-                setVisitedSquares(startindex, endindex, pointer);
-                pointer = pointer.jumpTail();
-            }
-
-            start = get(pointer.col0(), pointer.row0());
-            startindex = index(pointer.col0(), pointer.row0());
-            endindex = index(pointer.col1(), pointer.row1());
-
-            int jumpedIndex = pointer.jumpedIndex();
-            set(jumpedIndex, EMPTY);
-            set(startindex, EMPTY);
-            set(endindex, start);
-            setVisitedSquares(startindex, endindex, pointer);
+    /** Make the packed move MOVE on this Board, assuming it is legal. */
+    void makeMove(long move) {
+        assert legalMove(move);
+        if (_historyShared) {
+            unshareHistory();
+        }
+        if (_journalSize == _journalWhite.length) {
+            growJournal();
+        }
+        _journalVisits[_journalSize] = _visitLogSize;
+        _journalKeys[_journalSize] = _key;
+        _journalMoves[_journalSize] = move;
+        int white = _whitePieces, black = _blackPieces;
+        int k = packedFrom(move);
+        PieceColor mover = get(k);
+        int jumps = packedJumps(move);
+        if (jumps == 0) {
+            int to = NEIGHBOR[k][packedDirection(move, 0)];
+            set(k, EMPTY);
+            set(to, mover);
+            setVisitedSquares(k, to, -1);
+        }
+        for (int i = 0; i < jumps; i += 1) {
+            int d = packedDirection(move, i);
+            int over = JUMP_OVER[k][d], to = JUMP_TO[k][d];
+            set(over, EMPTY);
+            set(k, EMPTY);
+            set(to, mover);
+            setVisitedSquares(k, to, over);
+            k = to;
         }
+        _journalWhite[_journalSize] = white ^ _whitePieces;
+        _journalBlack[_journalSize] = black ^ _blackPieces;
+        _journalSize += 1;
 
-        _madeMoves.push(mov);
         _whoseMove = whoseMove().opposite();
+        positionChanged();
 
-        setChanged();
-        notifyObservers();
+        announceChange();
     }
 
-    /** keeps squares from moving back where they came from. */
-    private void setVisitedSquares(int startindex, int endindex, Move move) {
-        Stack<Integer> pieceStack = _visitedSquares.get(startindex);
-        if (!move.isJump()) {
-            pieceStack.push(startindex);
-            _visitedSquares.put(endindex, pieceStack);
-            _visitedSquares.put(startindex, new Stack<Integer>());
+    /** keeps squares from moving back where they came from.  Records the
+     *  move of a piece from STARTINDEX to ENDINDEX, capturing the piece at
+     *  JUMPEDINDEX, or capturing nothing if JUMPEDINDEX is -1. */
+    private void setVisitedSquares(int startindex, int endindex,
+                                   int jumpedIndex) {
+        if (jumpedIndex < 0) {
+            replaceVisits(endindex,
+                          _visited[startindex] | (1 << startindex));
+            replaceVisits(startindex, 0);
         } else {
-            _visitedSquares.put(move.jumpedIndex(), new Stack<Integer>());
-            _visitedSquares.put(startindex, new Stack<Integer>());
+            replaceVisits(jumpedIndex, 0);
+            replaceVisits(startindex, 0);
         }
 
     }
 
-    /** Undo the last move, if any. */
-    void undo() {
-        _whoseMove = _whoseMove.opposite();
-        Move lastmove = _madeMoves.peek();
-        Stack<Move> jumpmoves = new Stack<Move>();
-        Move pointer = lastmove;
-        if (lastmove.isJump()) {
-            while (pointer.jumpTail() != null) {
-                char col0 = pointer.col1();
-                char row0 = pointer.row1();
-                char col1 = pointer.col0();
-                char row1 = pointer.row0();
-                Move move = Move.move(col0, row0, col1, row1);
-                jumpmoves.push(move);
-                pointer = pointer.jumpTail();
-            }
-            char col0 = pointer.col1();
-            char row0 = pointer.row1();
-            char col1 = pointer.col0();
-            char row1 = pointer.row0();
-            jumpmoves.push(Move.move(col0, row0, col1, row1));
-            while (!jumpmoves.empty()) {
-                Move lastjump = jumpmoves.pop();
-                int lastJumpedIndex = lastjump.jumpedIndex();
-                set(lastJumpedIndex, _whoseMove.opposite());
-                makeMove(lastjump);
-                _whoseMove = whoseMove().opposite();
-                _madeMoves.pop();
-                set(lastJumpedIndex, _whoseMove.opposite());
-            }
-        } else if (!lastmove.isJump()) {
-            char col0 = pointer.col1();
-            char row0 = pointer.row1();
-            char col1 = pointer.col0();
-            char row1 = pointer.row0();
+    /** Set the visited squares of the piece at linearized index K to
+     *  VISITS, logging the value replaced so that undo can restore it. */
+    private void replaceVisits(int k, int visits) {
+        int n = _visitLogSize;
+        if (n == _visitLogSquares.length) {
+            int size = Math.max(JOURNAL_SIZE, 2 * n);
+            _visitLogSquares = Arrays.copyOf(_visitLogSquares, size);
+            _visitLogValues = Arrays.copyOf(_visitLogValues, size);
+        }
+        _visitLogSquares[n] = k;
+        _visitLogValues[n] = _visited[k];
+        _visitLogSize = n + 1;
+        _visited[k] = visits;
+    }
 
-            Move mov = Move.move(col0, row0, col1, row1);
+    /** Replace the undo journal and visit log with copies that I do not
+     *  share with any other Board. */
+    private void unshareHistory() {
+        _journalWhite = _journalWhite.clone();
+        _journalBlack = _journalBlack.clone();
+        _journalVisits = _journalVisits.clone();
+        _journalKeys = _journalKeys.clone();
+        _journalMoves = _journalMoves.clone();
+        _visitLogSquares = _visitLogSquares.clone();
+        _visitLogValues = _visitLogValues.clone();
+        _historyShared = false;
+    }
 
-            PieceColor start = get(mov.col0(), mov.row0());
-            int startindex = index(mov.col0(), mov.row0());
-            int endindex = index(mov.col1(), mov.row1());
+    /** Empty the undo journal and visit log, so that nothing before the
+     *  current position can be undone.  Arrays shared with another Board
+     *  are dropped rather than reused. */
+    private void clearHistory() {
+        if (_historyShared) {
+            _journalWhite = _journalBlack = _journalVisits = NO_INTS;
+            _journalKeys = _journalMoves = NO_LONGS;
+            _visitLogSquares = _visitLogValues = NO_INTS;
+            _historyShared = false;
+        }
+        _journalSize = 0;
+        _visitLogSize = 0;
+    }
+
+    /** Double the capacity of the undo journal. */
+    private void growJournal() {
+        int size = Math.max(JOURNAL_SIZE, 2 * _journalWhite.length);
+        _journalWhite = Arrays.copyOf(_journalWhite, size);
+        _journalBlack = Arrays.copyOf(_journalBlack, size);
+        _journalVisits = Arrays.copyOf(_journalVisits, size);
+        _journalKeys = Arrays.copyOf(_journalKeys, size);
+        _journalMoves = Arrays.copyOf(_journalMoves, size);
+    }
 
-            set(endindex, start);
-            set(startindex, EMPTY);
-            PieceColor p = get(endindex);
+    /** Undo the last move, if any.  The pieces are restored in constant
+     *  time and the _visited entries in time proportional to the
+     *  number of captures, and observers are notified once. */
+    void undo() {
+        if (_journalSize == 0) {
+            return;
+        }
+        _journalSize -= 1;
+        _whoseMove = _whoseMove.opposite();
+        positionChanged();
+        _gameOver = false;
 
+        _whitePieces ^= _journalWhite[_journalSize];
+        _blackPieces ^= _journalBlack[_journalSize];
+        _key = _journalKeys[_journalSize];
+        for (int n = _visitLogSize - 1; n >= _journalVisits[_journalSize];
+             n -= 1) {
+            _visited[_visitLogSquares[n]] = _visitLogValues[n];
         }
+        _visitLogSize = _journalVisits[_journalSize];
+
+        announceChange();
+    }
 
-        _madeMoves.pop();
-        setChanged();
-        notifyObservers();
+    /** Notify my observers that I have changed, if I have any.  The
+     *  check keeps makeMove and undo from locking and copying the empty
+     *  observer list at each node of a search. */
+    private void announceChange() {
+        if (countObservers() != 0) {
+            setChanged();
+            notifyObservers();
+        }
     }
 
     @Override
@@ -717,7 +978,7 @@ class Board extends Observable {
             for (int j = 20; j >= 0; j -= 5) {
                 out.format(" ");
                 for (int i = j; i < j + 5; i++) {
-                    PieceColor piececolor = _pieces.get(i);
+                    PieceColor piececolor = get(i);
                     out.format(" %s", piececolor.shortName());
                 }
                 if (j != 0) {
@@ -729,22 +990,43 @@ class Board extends Observable {
         return out.toString();
     }
 
+    /** Return true iff O is a Board with the same pieces, player to move,
+     *  and visited squares, and hence the same legal moves, as mine.  How
+     *  the boards reached their positions does not matter (see
+     *  sameHistory). */
     @Override
     public boolean equals(Object o) {
         if (o instanceof Board) {
             Board b = (Board) o;
-            return (b.toString().equals(toString())
-                    && b._whoseMove == whoseMove()
-                    && b._madeMoves.equals(_madeMoves));
+            return (b._whitePieces == _whitePieces
+                    && b._blackPieces == _blackPieces
+                    && b._whoseMove == _whoseMove
+                    && Arrays.equals(b._visited, _visited));
         } else {
             return false;
         }
     }
 
+    /** Returns a hash code consistent with equals, taken from
+     *  hashKey(). */
+    @Override
+    public int hashCode() {
+        return Long.hashCode(hashKey());
+    }
+
+    /** Return true iff B equals me and the same moves were made, in the
+     *  same order, to reach both our positions. */
+    boolean sameHistory(Board b) {
+        return equals(b)
+            && b._journalSize == _journalSize
+            && Arrays.equals(b._journalMoves, 0, _journalSize,
+                             _journalMoves, 0, _journalSize);
+    }
+
     /** Return true iff there is a move for the current player.
      * signifies if game is over. WAS PRIVATE*/
     public boolean isMove() {
-        if (getMoves().isEmpty()) {
+        if (!hasAnyLegalMove()) {
             _gameOver = true;
             return false;
         }
@@ -761,15 +1043,94 @@ class Board extends Observable {
     /** Set true when game ends. */
     private boolean _gameOver;
 
-    /** Allows allowpartial to happen. */
-    private boolean _copying = false;
+    /** The squares from which the player to move can capture, or UNKNOWN
+     *  if they have not been found since the position last changed. */
+    private int _jumpSources = UNKNOWN;
+
+    /** A value of _jumpSources that is not a set of squares, and of
+     *  _legalMask that is not a mask. */
+    private static final int UNKNOWN = -1;
+
+    /** Open-addressed hash table (of size _legalMask + 1, with empty
+     *  slots holding NO_MOVE) of the legal moves from this position, or
+     *  null if legalMove has not been called.  Valid only if _legalMask
+     *  is not UNKNOWN. */
+    private long[] _legalMoves;
+
+    /** One less than the size of the _legalMoves table in use, or UNKNOWN
+     *  if the position has changed since it was filled. */
+    private int _legalMask = UNKNOWN;
+
+    /** Scratch space for filling _legalMoves. */
+    private long[] _generated;
+
+    /** For the piece at each linearized index, the set (as a bit mask of
+     *  linearized indices) of squares it has stepped away from since it
+     *  last captured or was still, to which it may not step back. */
+    private int[] _visited = new int[MAX_INDEX + 1];
 
-    /** Contains visited pieces. */
-    public HashMap<Integer, Stack<Integer>> _visitedSquares
-            = new HashMap<Integer, Stack<Integer>>(MAX_INDEX + 1, 10);
+    /* The undo journal.  Entry I describes the Ith move made: the move
+     * itself (packed as described in Move), the squares whose white and
+     * whose black contents it changed (for the mover, its starting and
+     * landing squares; for the opponent, the squares it captured), the
+     * size of the visit log before the move, and the value of _key
+     * before the move.  The visit log holds, in order, each entry of
+     * _visited replaced by a move (its square and prior value).
+     *
+     * A new Board has an empty history, and a copy shares the arrays of
+     * its original.  Since a Board changes only entries past the end of
+     * its history, and undo only reads them, sharing is safe until one of
+     * the Boards makes a move.  Each then copies the arrays before
+     * changing them (see makeMove), so that copying a Board takes time
+     * independent of the length of the game. */
 
-    /** Contains made moves. */
-    public Stack<Move> _madeMoves = new Stack<Move>();
+    /** Initial capacity of the undo journal and visit log. */
+    private static final int JOURNAL_SIZE = 64;
+
+    /** An empty int array, shared by the histories of new Boards. */
+    private static final int[] NO_INTS = {};
+
+    /** An empty long array, shared by the histories of new Boards. */
+    private static final long[] NO_LONGS = {};
+
+    /** True iff my journal and visit log arrays may be shared with
+     *  another Board. */
+    private boolean _historyShared;
+
+    /** Squares whose white contents were changed by journaled moves. */
+    private int[] _journalWhite = NO_INTS;
+
+    /** Squares whose black contents were changed by journaled moves. */
+    private int[] _journalBlack = NO_INTS;
+
+    /** Size of the visit log before each journaled move. */
+    private int[] _journalVisits = NO_INTS;
+
+    /** Value of _key before each journaled move. */
+    private long[] _journalKeys = NO_LONGS;
+
+    /** The journaled moves, packed. */
+    private long[] _journalMoves = NO_LONGS;
+
+    /** Number of journaled moves. */
+    private int _journalSize;
+
+    /** Squares whose _visited entries were replaced. */
+    private int[] _visitLogSquares = NO_INTS;
+
+    /** The replaced _visited entries. */
+    private int[] _visitLogValues = NO_INTS;
+
+    /** Number of entries in the visit log. */
+    private int _visitLogSize;
+
+    /** Initial size of move buffers.  It holds the moves from any
+     *  position without a capture (each of which ends on an empty square,
+     *  reached from at most five others, so there are at most 60) and
+     *  the captures from all but a few contrived positions (such as
+     *  a lone piece among many opposing ones), for which buffers are
+     *  enlarged as getMoves(long[]) directs. */
+    static final int MOVE_BUFFER_SIZE = 256;
 
     /** Convenience value giving values of pieces at each ordinal position. */
     static final PieceColor[] PIECE_VALUES = PieceColor.values();
@@ -779,8 +1140,100 @@ class Board extends Observable {
     private static class MoveList extends ArrayList<Move> {
     }
 
-    /** holds the pieces of the board. */
-    public ArrayList<PieceColor> _pieces = new ArrayList<PieceColor>();
+    /** The squares holding white pieces, with bit K standing for the
+     *  square with linearized index K. */
+    private int _whitePieces;
+
+    /** The squares holding black pieces. */
+    private int _blackPieces;
+
+    /** Zobrist hash of the piece placement: the exclusive or of
+     *  WHITE_KEYS[K] for each white piece at K and BLACK_KEYS[K] for each
+     *  black piece at K.  Maintained by set. */
+    private long _key;
+
+    /** Zobrist keys for a white or black piece on each square. */
+    private static final long[] WHITE_KEYS = new long[MAX_INDEX + 1],
+        BLACK_KEYS = new long[MAX_INDEX + 1];
+
+    /** Zobrist key included when black is to move. */
+    private static final long BLACK_TO_MOVE_KEY;
+
+    static {
+        Random keys = new Random(0x2545f4914f6cdd1dL);
+        for (int k = 0; k <= MAX_INDEX; k += 1) {
+            WHITE_KEYS[k] = keys.nextLong();
+            BLACK_KEYS[k] = keys.nextLong();
+        }
+        BLACK_TO_MOVE_KEY = keys.nextLong();
+    }
+
+    /** All squares of the board. */
+    private static final int ALL_SQUARES = (1 << (MAX_INDEX + 1)) - 1;
+
+    /** Squares in column a, and in row 1. */
+    private static final int COL_A = 0x108421, ROW_1 = 0x1f;
+
+    /** Squares in column e, and in row 5. */
+    private static final int COL_E = COL_A << 4, ROW_5 = ROW_1 << 20;
+
+    /** Squares in columns a and b, and in rows 1 and 2. */
+    private static final int COLS_AB = COL_A | COL_A << 1,
+        ROWS_12 = ROW_1 | ROW_1 << 5;
+
+    /** Squares in columns d and e, and in rows 4 and 5. */
+    private static final int COLS_DE = COLS_AB << 3, ROWS_45 = ROWS_12 << 15;
+
+    /** Squares with even linearized index (those with diagonal
+     *  connections). */
+    private static final int EVEN = 0x1555555;
+
+    /** For each direction in STEPS, the squares from which a single step
+     *  in that direction stays on the board. */
+    private static final int[] STEP_FROM = {
+        EVEN & ~COL_E & ~ROW_5, EVEN & ~COL_A & ~ROW_5,
+        EVEN & ~COL_A & ~ROW_1, EVEN & ~COL_E & ~ROW_1,
+        ALL_SQUARES & ~COL_E, ALL_SQUARES & ~COL_A,
+        ALL_SQUARES & ~ROW_5, ALL_SQUARES & ~ROW_1
+    };
+
+    /** For each direction in STEPS, the squares from which a jump in that
+     *  direction stays on the board. */
+    private static final int[] JUMP_FROM = {
+        EVEN & ~COLS_DE & ~ROWS_45, EVEN & ~COLS_AB & ~ROWS_45,
+        EVEN & ~COLS_AB & ~ROWS_12, EVEN & ~COLS_DE & ~ROWS_12,
+        ALL_SQUARES & ~COLS_DE, ALL_SQUARES & ~COLS_AB,
+        ALL_SQUARES & ~ROWS_45, ALL_SQUARES & ~ROWS_12
+    };
+
+    /** Directions (indices into STEPS) of non-capturing moves for white,
+     *  and for black. */
+    private static final int[]
+        WHITE_STEPS = { 0, 1, 4, 5, 6 },
+        BLACK_STEPS = { 2, 3, 4, 5, 7 };
+
+    /** For each direction in STEPS, the squares from which a white piece,
+     *  and a black piece, may make a non-capturing move in that
+     *  direction: none for a backward direction or from the far row. */
+    private static final int[]
+        WHITE_STEP_FROM = stepFrom(WHITE_STEPS, ROW_5),
+        BLACK_STEP_FROM = stepFrom(BLACK_STEPS, ROW_1);
+
+    /** Return the sets of squares, for each direction in STEPS, from which
+     *  a piece that may step only in directions DIRS and not from the
+     *  squares of LASTROW may step in that direction. */
+    private static int[] stepFrom(int[] dirs, int lastRow) {
+        int[] result = new int[STEPS.length];
+        for (int d : dirs) {
+            result[d] = STEP_FROM[d] & ~lastRow;
+        }
+        return result;
+    }
+
+    /** Directions tried by findSingleJumps: diagonals, then orthogonals. */
+    private static final int[][] JUMP_ORDER = {
+        { 1, 0, 3, 2 }, { 5, 6, 4, 7 }
+    };
 
 
     /** A read-only view of a Board. */
@@ -806,6 +1259,11 @@ class Board extends Observable {
             assert false;
         }
 
+        @Override
+        void makeMove(long move) {
+            assert false;
+        }
+
         /** Undo the last move. */
         @Override
         void undo() {
@@ -3,8 +3,8 @@ package qirkat;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
-import java.util.Stack;
 import java.util.ArrayList;
+import java.util.HashSet;
 
 /** Tests of the Board class.
  *  @author Lila Chalabi
@@ -148,10 +148,217 @@ public class BoardTest {
         assertEquals(b0.getMoves().size(), 2);
         assertEquals(b0.getMoves().contains(Move.parseMove("b2-b4-d2-d4")),
                 true);
+        assertEquals(b0.getMoves(), returnmoves);
 
+        returnmoves.clear();
+        b0.getJumps(returnmoves, 0);
+        assertEquals(0, returnmoves.size());
+        assertEquals(b0.legalMove(Move.parseMove("b2-b4")), false);
     }
 
 
+    @Test
+    public void testPackedMoves() {
+        Board b0 = new Board();
+        long[] moves = new long[Board.MOVE_BUFFER_SIZE];
+        makeMoves(b0, GAME2);
+        for (String s : new String[] {
+                "----- -w--- -bbb- ----- -----",
+                "----- --www ----- -bbb- --bb-" }) {
+            int n = b0.getMoves(moves);
+            ArrayList<Move> expected = b0.getMoves();
+            assertEquals(expected.size(), n);
+            for (int i = 0; i < n; i += 1) {
+                assertEquals(expected.get(i), Move.unpack(moves[i]));
+            }
+            b0.setPieces(s, PieceColor.WHITE);
+            ArrayList<Move> jumps = new ArrayList<>();
+            for (int k = 0; k <= Move.MAX_INDEX; k += 1) {
+                b0.getJumps(jumps, k);
+            }
+            if (b0.jumpPossible()) {
+                assertEquals(jumps, b0.getMoves());
+            }
+        }
+        b0.setPieces("----- ----- ----- ----- ----w", PieceColor.WHITE);
+        assertEquals(0, b0.getMoves(moves));
+        assertEquals(false, b0.isMove());
+    }
+
+    @Test
+    public void testPackedMakeMove() {
+        Board b0 = new Board();
+        long[] moves = new long[Board.MOVE_BUFFER_SIZE];
+        makeMoves(b0, GAME2);
+        for (int k = 0; k < 100 && b0.isMove(); k += 1) {
+            int n = b0.getMoves(moves);
+            for (int i = 0; i < n; i += 1) {
+                assertTrue(b0.legalMove(moves[i]));
+                Board b1 = new Board(b0), b2 = new Board(b0);
+                b1.makeMove(moves[i]);
+                b2.makeMove(Move.unpack(moves[i]));
+                assertEquals(b2, b1);
+                b1.undo();
+                assertEquals(b0, b1);
+            }
+            b0.makeMove(moves[n - 1]);
+        }
+        Board b3 = new Board();
+        b3.setPieces("----- --w-- ----- ----- -----", PieceColor.WHITE);
+        assertTrue(b3.legalMove(Move.parseMove("c2-c3")));
+        assertFalse(b3.legalMove(Move.parseMove("c2-d3")));
+        assertFalse(b3.legalMove(Move.parseMove("c2-e3")));
+    }
+
+    @Test
+    public void testMoveIterator() {
+        Board b0 = new Board();
+        long[] moves = new long[Board.MOVE_BUFFER_SIZE];
+        Board.MoveIterator iter = new Board.MoveIterator();
+        makeMoves(b0, GAME2);
+        for (int k = 0; k < 100 && b0.isMove(); k += 1) {
+            int n = b0.getMoves(moves);
+            long first = moves[n / 2];
+            iter.start(b0, first);
+            assertEquals(first, iter.next());
+            for (int i = 0; i < n; i += 1) {
+                if (moves[i] != first) {
+                    assertEquals(moves[i], iter.next());
+                }
+            }
+            assertEquals(Move.NO_MOVE, iter.next());
+            assertTrue(b0.hasAnyLegalMove());
+            b0.makeMove(moves[0]);
+        }
+        assertFalse(b0.hasAnyLegalMove());
+        iter.start(b0, Move.NO_MOVE);
+        assertEquals(Move.NO_MOVE, iter.next());
+
+        b0 = new Board();
+        iter.start(b0, Move.pack(Move.parseMove("b2-b3")));
+        assertEquals(Move.pack(Move.parseMove("b2-c3")), iter.next());
+    }
+
+    @Test
+    public void testJumpSourcesCached() {
+        Board b0 = new Board();
+        for (String move : GAME1) {
+            assertEquals(jumpPossibleAfresh(b0), b0.jumpPossible());
+            b0.makeMove(Move.parseMove(move));
+            assertEquals(jumpPossibleAfresh(b0), b0.jumpPossible());
+            b0.undo();
+            assertEquals(jumpPossibleAfresh(b0), b0.jumpPossible());
+            b0.makeMove(Move.parseMove(move));
+        }
+        b0.setPieces("-w--- -b--- ----- ----- -----", PieceColor.BLACK);
+        assertEquals(false, b0.jumpPossible());
+        b0.setPieces("-w--- -b--- ----- ----- -----", PieceColor.WHITE);
+        assertEquals(true, b0.jumpPossible());
+    }
+
+    /** Return whether a jump is possible on a new Board set up with the
+     *  pieces and player to move of B. */
+    private static boolean jumpPossibleAfresh(Board b) {
+        StringBuilder pieces = new StringBuilder();
+        for (int k = 0; k <= Move.MAX_INDEX; k += 1) {
+            pieces.append(b.get(k).shortName());
+        }
+        Board fresh = new Board();
+        fresh.setPieces(pieces.toString(), b.whoseMove());
+        return fresh.jumpPossible();
+    }
+
+    @Test
+    public void testDistinctCaptures() {
+        Board b0 = new Board();
+        b0.setPieces("w-w-w bbbbb ----- bbbbb -----", PieceColor.WHITE);
+        long[] moves = new long[Board.MOVE_BUFFER_SIZE];
+        HashSet<Board> all = new HashSet<>(), distinct = new HashSet<>();
+        int n = b0.getMoves(moves, false);
+        for (int i = 0; i < n; i += 1) {
+            Board b1 = new Board(b0);
+            b1.makeMove(moves[i]);
+            all.add(b1);
+        }
+        int n1 = b0.getMoves(moves, true);
+        for (int i = 0; i < n1; i += 1) {
+            Board b1 = new Board(b0);
+            b1.makeMove(moves[i]);
+            assertTrue(distinct.add(b1));
+        }
+        assertEquals(25, n);
+        assertTrue(n1 < n);
+        assertEquals(all, distinct);
+    }
+
+    @Test
+    public void testLegalMoveGenerated() {
+        Board b0 = new Board();
+        b0.setPieces("wwb-b wb--b -bwbw -wb-b b-ww-", PieceColor.BLACK);
+        assertTrue(b0.legalMove(Move.parseMove("c4-a4")));
+        assertTrue(b0.legalMove(Move.parseMove("c4-c2")));
+        assertFalse(b0.legalMove(Move.parseMove("c4-e4")));
+        b0.setPieces("----- ----- -bwb- ----- -----", PieceColor.WHITE);
+        assertTrue(b0.legalMove(Move.parseMove("c3-a3")));
+        assertTrue(b0.legalMove(Move.parseMove("c3-e3")));
+        b0.setPieces("----- ----- -bwb- --b-- -----", PieceColor.WHITE);
+        assertTrue(b0.legalMove(Move.parseMove("c3-c5")));
+        assertTrue(b0.legalMove(Move.parseMove("c3-e3")));
+        Board b1 = new Board();
+        for (int ply = 0; ply < 40 && b1.isMove(); ply += 1) {
+            ArrayList<Move> moves = b1.getMoves();
+            for (int from = 0; from < Move.SIDE * Move.SIDE; from += 1) {
+                for (int to = 0; to < Move.SIDE * Move.SIDE; to += 1) {
+                    Move mov = Move.move(Move.col(from), Move.row(from),
+                                         Move.col(to), Move.row(to));
+                    boolean legal = moves.contains(mov);
+                    if (!legal && mov.isJump()) {
+                        legal = b1.get(from) == b1.whoseMove()
+                            && b1.checkJump(mov, false);
+                    }
+                    assertEquals(legal, b1.legalMove(mov));
+                }
+            }
+            b1.makeMove(moves.get(ply % moves.size()));
+            if (ply % 5 == 4) {
+                b1.undo();
+            }
+        }
+    }
+
+    @Test
+    public void testManyCaptures() {
+        Board b0 = new Board();
+        b0.setPieces("-b-bwbbbbb-b-b-bbbbb-b-b-", PieceColor.WHITE);
+        assertEquals(267, b0.perft(1));
+        ArrayList<Move> moves = b0.getMoves();
+        assertEquals(267, moves.size());
+        assertTrue(b0.legalMove(moves.get(266)));
+        long[] packed = new long[Board.MOVE_BUFFER_SIZE];
+        assertEquals(267, b0.getMoves(packed));
+        Board.MoveIterator iter = new Board.MoveIterator();
+        iter.start(b0, Move.NO_MOVE);
+        int n;
+        for (n = 0; iter.next() != Move.NO_MOVE; n += 1) {
+            continue;
+        }
+        assertEquals(267, n);
+        b0.makeMove(moves.get(0));
+        b0.undo();
+        assertTrue(b0.perft(2) > 0);
+    }
+
+    @Test
+    public void testPerft() {
+        Board b0 = new Board();
+        assertEquals(1, b0.perft(0));
+        assertEquals(4, b0.perft(1));
+        assertEquals(5, b0.perft(2));
+        assertEquals(27, b0.perft(5));
+        assertEquals(33336, b0.perft(10));
+        assertEquals(new Board(), b0);
+    }
+
     @Test
     public void testFindSingleJump() {
         Board b0 = new Board();
@@ -195,9 +402,7 @@ public class BoardTest {
     public void testMoves2() {
         Board b0 = new Board();
         b0.makeMove('c', '2', 'c', '3');
-        Stack<Integer> stack1 = new Stack<Integer>();
-        stack1.push(7);
-        assertEquals(b0._visitedSquares.get(12), stack1);
+        assertEquals(1 << 7, b0.visited(12));
 
         b0.makeMove('c', '4', 'c', '2');
 
@@ -211,14 +416,11 @@ public class BoardTest {
         b0.setPieces("--b-- b--bw ----- w---- -----", PieceColor.BLACK);
         b0.toString();
         b0.makeMove('a', '2', 'a', '1');
-        Stack<Integer> stack1 = new Stack<Integer>();
-        stack1.push(5);
-        assertEquals(b0._visitedSquares.get(0), stack1);
+        assertEquals(1 << 5, b0.visited(0));
 
-        Stack<Integer> stack2 = new Stack<Integer>();
         b0.makeMove('e', '2', 'c', '2');
-        assertEquals(b0._visitedSquares.get(7), stack2);
-        assertEquals(b0._visitedSquares.get(9), stack2);
+        assertEquals(0, b0.visited(7));
+        assertEquals(0, b0.visited(9));
 
         b0.toString();
     }
@@ -263,6 +465,61 @@ public class BoardTest {
         assertEquals("second pass failed to reach same position", b2, b0);
     }
 
+    @Test
+    public void testUndoExact() {
+        Board b0 = new Board();
+        b0.setPieces("----- -w--- ----- --b-- -----", PieceColor.WHITE);
+        b0.makeMove(Move.parseMove("b2-c2"));
+        b0.makeMove(Move.parseMove("c4-c3"));
+        String before = b0.toString();
+        int visits = b0.visited(7);
+        b0.makeMove(Move.parseMove("c2-c4"));
+        assertEquals(b0.isMove(), false);
+        b0.undo();
+        assertEquals(b0.gameOver(), false);
+        assertEquals(before, b0.toString());
+        assertEquals(PieceColor.WHITE, b0.whoseMove());
+        assertEquals(visits, b0.visited(7));
+    }
+
+    @Test
+    public void testSetPiecesClearsHistory() {
+        Board b0 = new Board();
+        b0.makeMove(Move.parseMove("c2-c3"));
+        Board b1 = new Board(b0);
+        b0.setPieces("----- ----- ----- ----- wwwww", PieceColor.WHITE);
+        String after = b0.toString();
+        b0.undo();
+        assertEquals(after, b0.toString());
+        assertEquals(PieceColor.WHITE, b0.whoseMove());
+        Board b2 = new Board();
+        b2.setPieces("----- ----- ----- ----- wwwww", PieceColor.WHITE);
+        assertTrue(b2.sameHistory(b0));
+        b1.undo();
+        assertEquals(new Board().toString(), b1.toString());
+    }
+
+    @Test
+    public void testHashKey() {
+        Board b0 = new Board();
+        Board b1 = new Board();
+        Board b2 = new Board();
+        b0.setPieces("w---- ----- ----- ----- ----b", PieceColor.WHITE);
+        b1.setPieces("w---- ----- ----- ----- ----b", PieceColor.WHITE);
+        b2.setPieces("----- -w--- ----- ----b -----", PieceColor.WHITE);
+        long start = b0.hashKey();
+        makeMoves(b0, new String[] { "a1-a2", "e5-e4", "a2-b2" });
+        makeMoves(b1, new String[] { "a1-b1", "e5-e4", "b1-b2" });
+        assertEquals(b0.hashKey(), b1.hashKey());
+        assertNotEquals(b0.hashKey(), b2.hashKey());
+        b2.setPieces("----- -w--- ----- ----b -----", PieceColor.BLACK);
+        assertEquals(b0.hashKey(), b2.hashKey());
+        b0.undo();
+        b0.undo();
+        b0.undo();
+        assertEquals(start, b0.hashKey());
+    }
+
     @Test
     public void testInternalCopy() {
         Board b0 = new Board();
@@ -278,6 +535,79 @@ public class BoardTest {
 
     }
 
+    @Test
+    public void testCopyVisits() {
+        Board b0 = new Board();
+        b0.setPieces("----- -w--- ----- --b-- -----", PieceColor.WHITE);
+        makeMoves(b0, new String[] { "b2-c2", "c4-b4" });
+        Board b1 = new Board(b0);
+        assertEquals(b0.getMoves(), b1.getMoves());
+        assertEquals(b1.legalMove(Move.parseMove("c2-b2")), false);
+    }
+
+    @Test
+    public void testCopyIndependent() {
+        Board b0 = new Board();
+        makeMoves(b0, GAME1);
+        Board b1 = new Board(b0);
+        Board b2 = new Board(b1);
+        b0.undo();
+        b0.undo();
+        ArrayList<Move> moves = b0.getMoves();
+        moves.remove(Move.parseMove(GAME1[GAME1.length - 2]));
+        b0.makeMove(moves.get(0));
+        assertEquals(b1, b2);
+        for (int i = 0; i < GAME1.length; i += 1) {
+            b1.undo();
+        }
+        assertEquals(new Board(), b1);
+        for (int i = 0; i < GAME1.length - 1; i += 1) {
+            b0.undo();
+        }
+        assertEquals(new Board(), b0);
+        b2.undo();
+        makeMoves(b2, new String[] { GAME1[GAME1.length - 1] });
+        assertEquals(new Board(b2), b2);
+    }
+
+    @Test
+    public void testEqualsHash() {
+        Board b0 = new Board();
+        b0.setPieces("----- -w--- -bbb- ----- -----", PieceColor.WHITE);
+        b0.makeMove(Move.parseMove("b2-b4-d2-d4"));
+        Board b1 = new Board();
+        b1.setPieces("----- ----- ----- ---w- -----", PieceColor.BLACK);
+        assertEquals(b0, b1);
+        assertEquals(b0.hashCode(), b1.hashCode());
+        assertFalse(b0.sameHistory(b1));
+        assertTrue(b0.sameHistory(new Board(b0)));
+        HashSet<Board> positions = new HashSet<>();
+        positions.add(b0);
+        assertTrue(positions.contains(b1));
+
+        Board b2 = new Board();
+        b2.setPieces("--b-- b--bw ----- w---- -----", PieceColor.BLACK);
+        b2.makeMove(Move.parseMove("a2-a1"));
+        Board b3 = new Board();
+        b3.setPieces("b-b-- ---bw ----- w---- -----", PieceColor.WHITE);
+        assertEquals(b2.hashKey(), b3.hashKey());
+        assertNotEquals(b2, b3);
+    }
+
+    @Test
+    public void testPieceSets() {
+        Board b0 = new Board();
+        b0.setPieces("w---b ----- --w-- ----- b---w", PieceColor.WHITE);
+        assertEquals(b0.pieceCount(PieceColor.WHITE), 3);
+        assertEquals(b0.pieceCount(PieceColor.BLACK), 2);
+        assertEquals(b0.material(), 1);
+        assertEquals(b0.pieces(PieceColor.WHITE),
+                (1 << 0) | (1 << 12) | (1 << 24));
+        assertEquals(b0.get(20), PieceColor.BLACK);
+        assertEquals(b0.get('c', '3'), PieceColor.WHITE);
+        assertEquals(b0.get(1), PieceColor.EMPTY);
+    }
+
     @Test
     public void testJumpPossible() {
         Board b0 = new Board();
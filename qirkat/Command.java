@@ -19,6 +19,11 @@ class Command {
         AUTO("(?i)auto\\s+(white|black)"),
         MANUAL("(?i)manual\\s+(white|black)"),
         SEED("seed\\s+(\\d+)"),
+        MOVETIME("movetime\\s+(\\d+)"),
+        THREADS("threads\\s+(\\d+)"),
+        PARALLEL("parallel\\s+(lazy|forkjoin)"),
+        PERFT("perft\\s+(\\d+)"),
+        DIVIDE("divide\\s+(\\d+)"),
         START,
         SETBOARD("(?i)set\\s+(white|black)\\s+((?:[bw-]\\s*){25})"),
         /* Regular moves (set-up or play) */
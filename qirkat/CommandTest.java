@@ -43,6 +43,34 @@ public class CommandTest {
         checkError("seed 142 foo");
     }
 
+    @Test public void testMOVETIME() {
+        check("movetime 500", MOVETIME, "500");
+        checkError("movetime");
+        checkError("movetime -5");
+        checkError("movetime 500 foo");
+    }
+
+    @Test public void testTHREADS() {
+        check("threads 4", THREADS, "4");
+        checkError("threads");
+        checkError("threads four");
+        checkError("threads 4 foo");
+    }
+
+    @Test public void testPARALLEL() {
+        check("parallel lazy", PARALLEL, "lazy");
+        check("parallel forkjoin", PARALLEL, "forkjoin");
+        checkError("parallel");
+        checkError("parallel fast");
+    }
+
+    @Test public void testPERFT() {
+        check("perft 5", PERFT, "5");
+        check("divide 5", DIVIDE, "5");
+        checkError("perft");
+        checkError("divide five");
+    }
+
     @Test public void testSTART() {
         check("start", START);
         checkError("start foo");
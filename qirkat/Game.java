@@ -5,8 +5,11 @@ import java.io.InputStreamReader;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.Consumer;
 
 import static qirkat.PieceColor.*;
@@ -136,6 +139,25 @@ class Game {
         return null;
     }
 
+    /** Return the number of milliseconds an AI may spend searching for
+     *  a move. */
+    long moveTime() {
+        return _moveTime;
+    }
+
+    /** Return the number of threads an AI may use to search for a
+     *  move. */
+    int threads() {
+        return _threads;
+    }
+
+    /** Return true iff an AI using several threads should divide up its
+     *  search tree among them, rather than having them search the
+     *  whole tree independently. */
+    boolean forkJoin() {
+        return _forkJoin;
+    }
+
     /** Return random integer between 0 (inclusive) and MAX>0 (exclusive). */
     int nextRandom(int max) {
         return _randoms.nextInt(max);
@@ -274,6 +296,123 @@ class Game {
         }
     }
 
+    /** Execute 'movetime OPERANDS[0]' command, where the operand is a
+     *  string of decimal digits giving the number of milliseconds an AI
+     *  may spend searching for each move. */
+    void doMoveTime(String[] operands) {
+        long millis;
+        try {
+            millis = Long.parseLong(operands[0]);
+        } catch (NumberFormatException e) {
+            millis = Long.MAX_VALUE;
+        }
+        if (millis > MAX_MOVE_TIME) {
+            throw error("Move time too large: %s", operands[0]);
+        }
+        _moveTime = millis;
+    }
+
+    /** Execute 'threads OPERANDS[0]' command, where the operand is a
+     *  string of decimal digits giving the number of threads an AI may
+     *  use to search for a move. */
+    void doThreads(String[] operands) {
+        int threads;
+        try {
+            threads = Integer.parseInt(operands[0]);
+        } catch (NumberFormatException e) {
+            threads = Integer.MAX_VALUE;
+        }
+        if (threads < 1 || threads > MAX_THREADS) {
+            throw error("Number of threads must be between 1 and %d",
+                        MAX_THREADS);
+        }
+        _threads = threads;
+    }
+
+    /** Execute 'parallel OPERANDS[0]' command, where the operand is
+     *  "lazy" or "forkjoin". */
+    void doParallel(String[] operands) {
+        _forkJoin = operands[0].equals("forkjoin");
+    }
+
+    /** Execute 'perft OPERANDS[0]' command, where the operand is a string
+     *  of decimal digits giving a number of moves (plies). */
+    void doPerft(String[] operands) {
+        perft(operands[0], false);
+    }
+
+    /** Execute 'divide OPERANDS[0]' command, where the operand is a
+     *  string of decimal digits giving a number of moves (plies). */
+    void doDivide(String[] operands) {
+        perft(operands[0], true);
+    }
+
+    /** Report the number of positions DEPTH moves (plies) from the
+     *  current position, the time taken to find them, and the resulting
+     *  rate.  If DIVIDE, first report the count after each legal move.
+     *  When AIs divide up their search (see doParallel), the legal moves
+     *  are divided among threads(). */
+    private void perft(String depth, boolean divide) {
+        int plies;
+        try {
+            plies = Integer.parseInt(depth);
+        } catch (NumberFormatException e) {
+            plies = Integer.MAX_VALUE;
+        }
+        if (plies > MAX_PERFT_DEPTH) {
+            throw error("Perft depth too large: %s", depth);
+        }
+        Board board = new Board(_board);
+        long start = System.nanoTime();
+        long[] moves = new long[Board.MOVE_BUFFER_SIZE];
+        int n = plies == 0 ? 0 : board.getMoves(moves);
+        if (n > moves.length) {
+            moves = new long[n];
+            board.getMoves(moves);
+        }
+        long[] counts = new long[n];
+        long total = plies == 0 ? 1 : 0;
+        if (n > 0 && _forkJoin && _threads > 1) {
+            ArrayList<ForkJoinTask<Long>> tasks = new ArrayList<>();
+            int d = plies - 1;
+            for (int i = 0; i < n; i += 1) {
+                Board child = new Board(board);
+                long m = moves[i];
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    child.makeMove(m);
+                    return child.perft(d);
+                }));
+            }
+            ForkJoinPool pool = new ForkJoinPool(_threads);
+            try {
+                pool.invoke(ForkJoinTask.adapt(() ->
+                    ForkJoinTask.invokeAll(tasks), null));
+            } finally {
+                pool.shutdown();
+            }
+            for (int i = 0; i < n; i += 1) {
+                counts[i] = tasks.get(i).join();
+            }
+        } else {
+            for (int i = 0; i < n; i += 1) {
+                board.makeMove(moves[i]);
+                counts[i] = board.perft(plies - 1);
+                board.undo();
+            }
+        }
+        double seconds = (System.nanoTime() - start) * 1e-9;
+        for (int i = 0; i < n; i += 1) {
+            if (divide) {
+                _reporter.outcomeMsg("%s: %d", Move.unpack(moves[i]),
+                                     counts[i]);
+            }
+            total += counts[i];
+        }
+        _reporter.outcomeMsg("Nodes: %d, time: %.3f s, %.0f nodes/s",
+                             total, seconds,
+                             total / Math.max(seconds, 1e-9));
+    }
+
     /** Execute the artificial 'error' command. */
     void doError(String[] unused) {
         throw error("Command not understood");
@@ -298,13 +437,18 @@ class Game {
     {
         _commands.put(AUTO, this::doAuto);
         _commands.put(CLEAR, this::doClear);
+        _commands.put(DIVIDE, this::doDivide);
         _commands.put(DUMP, this::doDump);
         _commands.put(HELP, this::doHelp);
         _commands.put(MANUAL, this::doManual);
+        _commands.put(MOVETIME, this::doMoveTime);
+        _commands.put(PARALLEL, this::doParallel);
+        _commands.put(PERFT, this::doPerft);
         _commands.put(PIECEMOVE, this::doMove);
         _commands.put(SEED, this::doSeed);
         _commands.put(SETBOARD, this::doSet);
         _commands.put(START, this::doStart);
+        _commands.put(THREADS, this::doThreads);
         _commands.put(LOAD, this::doLoad);
         _commands.put(QUIT, this::doQuit);
         _commands.put(ERROR, this::doError);
@@ -322,6 +466,20 @@ class Game {
     private State _state;
     /** Used to send messages to the user. */
     private Reporter _reporter;
+    /** Default number of milliseconds an AI may spend on a move. */
+    static final long DEFAULT_MOVE_TIME = 1000;
+    /** Largest allowed AI move time (one day). */
+    static final long MAX_MOVE_TIME = 24L * 60 * 60 * 1000;
+    /** Number of milliseconds an AI may spend searching for a move. */
+    private long _moveTime = DEFAULT_MOVE_TIME;
+    /** Largest allowed number of AI search threads. */
+    static final int MAX_THREADS = 256;
+    /** Number of threads an AI may use to search for a move. */
+    private int _threads = 1;
+    /** True iff AI threads divide up the search tree. */
+    private boolean _forkJoin;
+    /** Largest allowed depth for perft and divide. */
+    static final int MAX_PERFT_DEPTH = 64;
     /** Source of pseudo-random numbers (used by AIs). */
     private Random _randoms = new Random();
 }
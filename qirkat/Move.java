@@ -1,9 +1,11 @@
 package qirkat;
 
 import static java.lang.Math.abs;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
 import java.util.Formatter;
-import java.util.HashMap;
-import java.util.function.Function;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
@@ -39,51 +41,83 @@ class Move {
      * one. Moves themselves are immutable, and for any possible move,
      * there is exactly one object of type Move. */
 
-    /* To avoid creating Move objects that are not needed, we maintain a
-     * a static variable, _staged containing a Move object.  The move
-     * factory methods then sets the fields of this object before looking to
-     * to see if there is already a Move object with the same parameters.
-     * If there is, the move methods will simply return it, thus allowing
-     * _staged to be reused on the next call without having to create a
-     * new Move object.  Otherwise, we use the _staged object itself as the
-     * new Move, and set the variable to null so that we create a new
-     * Move on the next call to move. There is a drawback: since there
-     * is at most one _staged object at any time, at most one call to move
-     * may execute simultaneously.  Otherwise, the methods may attempt
-     * to use the same Move object for two different Moves, which clearly
-     * will not work.  Therefore, we indicate in the comments that a number
-     * of the operations are not "thread safe". Fortunately, we do not run
-     * into this problem since there is no parallel programming going on.
-     */
-
-    /** The move constructor.*/
-    public Move() {
+    /* To avoid creating Move objects that are not needed, and to let
+     * any number of search threads (and games) call the factory at once,
+     * all single steps and jumps are created when the class is
+     * initialized and kept in SINGLE, indexed by their starting and
+     * ending squares.  A chain of jumps is determined by its first
+     * square and the chain that follows, so each jump keeps a table of
+     * the chains that begin with a jump onto its starting square,
+     * indexed by the square that jump comes from.  Entries are filled in
+     * on first use with a compare-and-set, so that every thread sees the
+     * same Move object for the same chain without taking a lock. */
+
+    /** A Move from COL0 ROW0 to COL1 ROW1 followed by NEXTJUMP. */
+    private Move(char col0, char row0, char col1, char row1,
+                 Move nextJump) {
+        assert validSquare(col0, row0) && validSquare(col1, row1);
+        _col0 = col0;
+        _row0 = row0;
+        _col1 = col1;
+        _row1 = row1;
+        _fromIndex = (byte) index(col0, row0);
+        _toIndex = (byte) index(col1, row1);
+        _isJump = abs(col0 - col1) > 1 || abs(row0 - row1) > 1;
+        char jumpedCol = col1, jumpedRow = row1;
+        if (abs(col0 - col1) > 1) {
+            jumpedCol += Integer.signum(col0 - col1);
+        }
+        if (_isJump) {
+            jumpedRow += Integer.signum(row0 - row1);
+        }
+        _jumpedIndex = (byte) index(jumpedCol, jumpedRow);
+        _nextJump = nextJump;
+        assert (_isJump
+                && (nextJump == null
+                    || (nextJump.isJump()
+                        && col1 == nextJump.col0()
+                        && row1 == nextJump.row0())))
+            || (!_isJump && nextJump == null);
     }
 
     /** A factory method that returns a Move from COL0 ROW0 to COL1 ROW1,
      *  followed by NEXTJUMP, if this move is a jump. Assumes the column
      *  and row designations are valid and that NEXTJUMP is null for a
-     *  non-capturing move.  Not thread-safe. */
-    static Move move(char col0, char row0, char col1, char row1,
-                     Move nextJump) {
-        if (_staged == null) {
-            _staged = new Move();
-        }
-        _staged.set(col0, row0, col1, row1, nextJump);
-        if (_staged.isJump() && nextJump != null && !nextJump.isJump()) {
-            throw new IllegalArgumentException("bad jump");
-        } else if (!_staged.isJump() && nextJump != null) {
+     *  non-capturing move. */
+    static Move move(char col0, char row0, char col1,
+                     char row1, Move nextJump) {
+        Move first = SINGLE[index(col0, row0)][index(col1, row1)];
+        if (nextJump == null) {
+            return first;
+        } else if (!first.isJump() || !nextJump.isJump()) {
             throw new IllegalArgumentException("bad jump");
         }
-        Move result = _internedMoves.computeIfAbsent(_staged, IDENTITY);
-        if (result == _staged) {
-            _staged = null;
+        assert col1 == nextJump.col0() && row1 == nextJump.row0();
+        return nextJump.prefixed(first);
+    }
+
+    /** Return the interned Move consisting of the single jump FIRST
+     *  followed by me. */
+    private Move prefixed(Move first) {
+        AtomicReferenceArray<Move> prefixes = _prefixes;
+        if (prefixes == null) {
+            PREFIXES.compareAndSet(this, null,
+                                   new AtomicReferenceArray<Move>(SIDE
+                                                                  * SIDE));
+            prefixes = _prefixes;
+        }
+        Move result = prefixes.get(first._fromIndex);
+        if (result == null) {
+            prefixes.compareAndSet(first._fromIndex, null,
+                                   new Move(first._col0, first._row0,
+                                            first._col1, first._row1,
+                                            this));
+            result = prefixes.get(first._fromIndex);
         }
         return result;
     }
 
-    /** Return a single move or jump from (COL0, ROW0) to (COL1, ROW1).
-     *  Not thread-safe. */
+    /** Return a single move or jump from (COL0, ROW0) to (COL1, ROW1). */
     static Move move(char col0, char row0, char col1, char row1) {
         return move(col0, row0, col1, row1, null);
     }
@@ -116,13 +150,194 @@ class Move {
 
             return move(col0m0, row0m0, col0m1, row0m1, move1);
         }
-        if (move0.jumpTail() == null) {
-            return move(move0._col0, move0._row0, move0._col1,
-                    move0._row1, move1);
-        } else {
-            move0._nextJump._nextJump = move1;
-            return move0;
+        return move(move0._col0, move0._row0, move0._col1,
+                    move0._row1, move(move0._nextJump, move1));
+    }
+
+    /* Packed moves.  The AI and move generator represent a move as a
+     * long, which takes no allocation to create or store:
+     *   bits 0-4:   the linearized index of the starting square;
+     *   bits 5-9:   the number of jumps (0 for a non-capturing move);
+     *   bits 10-63: three bits for each jump in turn, giving its direction
+     *               as an index into STEPS, or for a non-capturing move,
+     *               the direction of its single step.
+     * A chain of jumps may therefore have up to MAX_JUMPS legs, more than
+     * the pieces either side starts with.  NO_MOVE, which has too many
+     * jumps, stands for no move at all. */
+
+    /** Change in linearized index for a step in each direction: up-right,
+     *  up-left, down-left, down-right, right, left, up, and down. */
+    static final int[] STEPS = { 6, 4, -6, -4, 1, -1, 5, -5 };
+
+    /** Change in column and in row for a step in each direction of
+     *  STEPS. */
+    private static final int[]
+        STEP_COLS = { 1, -1, -1, 1, 1, -1, 0, 0 },
+        STEP_ROWS = { 1, 1, -1, -1, 0, 0, 1, -1 };
+
+    /** For each linearized index K and direction D (an index into STEPS),
+     *  NEIGHBOR[K][D] is the square one step from K in direction D, or -1
+     *  if that step leaves the board or K has no diagonals. */
+    static final int[][] NEIGHBOR = new int[SIDE * SIDE][STEPS.length];
+
+    /** For each linearized index K and direction D, JUMP_OVER[K][D] is the
+     *  square a jump from K in direction D passes over, and JUMP_TO[K][D]
+     *  the square it lands on, or both are -1 if there is no such jump. */
+    static final int[][]
+        JUMP_OVER = new int[SIDE * SIDE][STEPS.length],
+        JUMP_TO = new int[SIDE * SIDE][STEPS.length];
+
+    /** For linearized indices K0 and K1, STEP_DIRECTION[K0][K1] is the
+     *  direction of a single step from K0 to K1, and JUMP_DIRECTION[K0][K1]
+     *  that of a jump, or -1 if there is no such step or jump. */
+    private static final int[][]
+        STEP_DIRECTION = new int[SIDE * SIDE][SIDE * SIDE],
+        JUMP_DIRECTION = new int[SIDE * SIDE][SIDE * SIDE];
+
+    static {
+        for (int k = 0; k <= MAX_INDEX; k += 1) {
+            Arrays.fill(STEP_DIRECTION[k], -1);
+            Arrays.fill(JUMP_DIRECTION[k], -1);
+        }
+        for (int k = 0; k <= MAX_INDEX; k += 1) {
+            for (int d = 0; d < STEPS.length; d += 1) {
+                int dc = STEP_COLS[d], dr = STEP_ROWS[d];
+                NEIGHBOR[k][d] = neighbor(k, dc, dr);
+                JUMP_OVER[k][d] = JUMP_TO[k][d] = -1;
+                if (NEIGHBOR[k][d] >= 0) {
+                    STEP_DIRECTION[k][NEIGHBOR[k][d]] = d;
+                    int to = neighbor(k, 2 * dc, 2 * dr);
+                    if (to >= 0) {
+                        JUMP_OVER[k][d] = NEIGHBOR[k][d];
+                        JUMP_TO[k][d] = to;
+                        JUMP_DIRECTION[k][to] = d;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Return the linearized index of the square DC columns and DR rows
+     *  from linearized index K, or -1 if it is off the board or the move
+     *  there is diagonal and K has no diagonals. */
+    private static int neighbor(int k, int dc, int dr) {
+        int c = k % SIDE + dc, r = k / SIDE + dr;
+        if (c < 0 || c >= SIDE || r < 0 || r >= SIDE
+            || dc != 0 && dr != 0 && k % 2 != 0) {
+            return -1;
+        }
+        return r * SIDE + c;
+    }
+
+    /** Largest number of jumps in a packed move. */
+    static final int MAX_JUMPS = 18;
+
+    /** A packed value that denotes no move. */
+    static final long NO_MOVE = -1;
+
+    /** Bit positions of the fields of a packed move. */
+    private static final int JUMPS_SHIFT = 5, DIRECTIONS_SHIFT = 10;
+
+    /** Return the packed non-capturing move from linearized index FROM
+     *  one step in direction DIR. */
+    static long packedStep(int from, int dir) {
+        return from | (long) dir << DIRECTIONS_SHIFT;
+    }
+
+    /** Return the packed move consisting of CHAIN followed by a jump in
+     *  direction DIR.  CHAIN is a packed jump, or, to start a chain, the
+     *  linearized index of the starting square. */
+    static long packedJump(long chain, int dir) {
+        int jumps = packedJumps(chain);
+        assert jumps < MAX_JUMPS;
+        return (chain & ~(0x1fL << JUMPS_SHIFT))
+            | (long) (jumps + 1) << JUMPS_SHIFT
+            | (long) dir << (DIRECTIONS_SHIFT + 3 * jumps);
+    }
+
+    /** Return the linearized index of the starting square of packed
+     *  move MOVE. */
+    static int packedFrom(long move) {
+        return (int) move & 0x1f;
+    }
+
+    /** Return the number of jumps in packed move MOVE (0 if it is not a
+     *  capture). */
+    static int packedJumps(long move) {
+        return (int) (move >>> JUMPS_SHIFT) & 0x1f;
+    }
+
+    /** Return the direction of step or jump number I of packed move
+     *  MOVE. */
+    static int packedDirection(long move, int i) {
+        return (int) (move >>> (DIRECTIONS_SHIFT + 3 * i)) & 7;
+    }
+
+    /** Return the linearized index of the final square of packed move
+     *  MOVE. */
+    static int packedTo(long move) {
+        int jumps = packedJumps(move);
+        int k = packedFrom(move);
+        if (jumps == 0) {
+            return NEIGHBOR[k][packedDirection(move, 0)];
+        }
+        for (int i = 0; i < jumps; i += 1) {
+            k = JUMP_TO[k][packedDirection(move, i)];
+        }
+        return k;
+    }
+
+    /** Return the set (as a bit mask of linearized indices) of the squares
+     *  whose pieces packed move MOVE captures. */
+    static int packedCaptures(long move) {
+        int k = packedFrom(move);
+        int result = 0;
+        for (int i = 0; i < packedJumps(move); i += 1) {
+            int d = packedDirection(move, i);
+            result |= 1 << JUMP_OVER[k][d];
+            k = JUMP_TO[k][d];
         }
+        return result;
+    }
+
+    /** Return the Move denoted by packed move MOVE. */
+    static Move unpack(long move) {
+        int from = packedFrom(move);
+        if (packedJumps(move) == 0) {
+            int to = packedTo(move);
+            return move(col(from), row(from), col(to), row(to));
+        }
+        return unpackJumps(move, from, 0);
+    }
+
+    /** Return the Move consisting of jumps I and following of packed move
+     *  MOVE, where jump I starts at linearized index FROM, or null if
+     *  there are no such jumps. */
+    private static Move unpackJumps(long move, int from, int i) {
+        if (i == packedJumps(move)) {
+            return null;
+        }
+        int to = JUMP_TO[from][packedDirection(move, i)];
+        return move(col(from), row(from), col(to), row(to),
+                    unpackJumps(move, to, i + 1));
+    }
+
+    /** Return the packed form of MOVE, or NO_MOVE if MOVE is vestigial or
+     *  one of its steps or jumps does not follow a line of the board. */
+    static long pack(Move move) {
+        if (!move.isJump()) {
+            int dir = STEP_DIRECTION[move.fromIndex()][move.toIndex()];
+            return dir < 0 ? NO_MOVE : packedStep(move.fromIndex(), dir);
+        }
+        long result = move.fromIndex();
+        for (Move m = move; m != null; m = m.jumpTail()) {
+            int dir = JUMP_DIRECTION[m.fromIndex()][m.toIndex()];
+            if (dir < 0) {
+                return NO_MOVE;
+            }
+            result = packedJump(result, dir);
+        }
+        return result;
     }
 
     /** Return true iff (C, R) is a valid square designation. */
@@ -205,38 +420,13 @@ class Move {
      *  first leg of the jump.  For a non-capturing move, same as row1().
      *  do something like if isjump then row is one less*/
     char jumpedRow() {
-        if (!isJump()) {
-            return row1();
-        } else {
-            int ind1 = index(col1(), row1());
-            int ind0 = index(col0(), row0());
-            char row1 = row(ind1);
-            char row0 = row(ind0);
-            if (row1 < row0) {
-                int indjumped = ind1 + 5;
-                return row(indjumped);
-            } else if (row0 < row1) {
-                int indjumped = ind1 - 5;
-                return row(indjumped);
-            } else {
-                return row1;
-            }
-
-        }
+        return row(_jumpedIndex);
     }
 
     /** For a jump, returns the column of the jumped-over square for the
      *  first leg of the jump.  For a non-capturing move, same as col1(). */
     char jumpedCol() {
-        int ind = index(col1(), row1());
-        if (col0() - col1() > 1) {
-            int indjumped = ind + 1;
-            return col(indjumped);
-        } else if (col0() - col1() < -1) {
-            int indjumped = ind - 1;
-            return col(indjumped);
-        }
-        return col1();
+        return col(_jumpedIndex);
     }
 
 
@@ -252,7 +442,7 @@ class Move {
 
     /** Return the linearized index of (jumpedCol(), jumpedRow()). */
     int jumpedIndex() {
-        return index(jumpedCol(), jumpedRow());
+        return _jumpedIndex;
     }
 
     /** Return the second and subsequent jumps comprising this jump, or null
@@ -326,51 +516,54 @@ class Move {
         }
     }
 
-    /** Set me to COL0 ROW0 - COL1 ROW1 - NEXTJUMP. */
-    private void set(char col0, char row0, char col1, char row1,
-                     Move nextJump) {
-        assert col0 >= 'a' && row0 >= '1' && col1 >= 'a' && row1 >= '1'
-            && col0 <= 'e' && row0 <= '5' && col1 <= 'e' &&  row1 <= '5';
-        _col0 = col0;
-        _row0 = row0;
-        _col1 = col1;
-        _row1 = row1;
-        _fromIndex = (byte) index(col0, row0);
-        _toIndex = (byte) index(col1, row1);
-        _isJump = abs(col0 - col1) > 1 || abs(row0 - row1) > 1;
-        _nextJump = nextJump;
-        assert (_isJump
-                && (nextJump == null
-                    || (nextJump.isJump()
-                        && col1 == nextJump.col0()
-                        && row1 == nextJump.row0())))
-            || (!_isJump && nextJump == null);
-    }
-
     /** Linearized indices. */
-    private byte _fromIndex, _toIndex;
+    private final byte _fromIndex, _toIndex;
+
+    /** Linearized index of the square whose row and column jumpedRow
+     *  and jumpedCol return. */
+    private final byte _jumpedIndex;
 
     /** True iff move is a jump. */
-    private boolean _isJump;
+    private final boolean _isJump;
 
     /** From and to squares, or 0s if a pass. */
-    private char _col0, _row0, _col1, _row1;
+    private final char _col0, _row0, _col1, _row1;
 
     /** For a jump, the Move representing the jumps following the
      *  initial jump. */
-    private Move _nextJump;
+    private final Move _nextJump;
 
     /* Used for the Move factory. */
 
-    /** Holds the next Move object to be added to _internedMoves.
-     *  The factory method move tentatively fills it in, and then returns
-     *  it if it is unique (resetting _staged to null). */
-    private static Move _staged;
+    /** For a jump, the chains consisting of a single jump onto my
+     *  starting square followed by me, indexed by the square that jump
+     *  starts from, or null if no such chain has been created yet. */
+    private volatile AtomicReferenceArray<Move> _prefixes;
+
+    /** Installs _prefixes atomically. */
+    private static final VarHandle PREFIXES;
+
+    static {
+        try {
+            PREFIXES = MethodHandles.lookup()
+                .findVarHandle(Move.class, "_prefixes",
+                               AtomicReferenceArray.class);
+        } catch (ReflectiveOperationException excp) {
+            throw new ExceptionInInitializerError(excp);
+        }
+    }
 
-    /** The set of all distinct moves generated so far. */
-    private static HashMap<Move, Move> _internedMoves = new HashMap<>();
+    /** All single steps and jumps, indexed by the linearized indices of
+     *  their starting and ending squares. */
+    private static final Move[][] SINGLE = new Move[SIDE * SIDE][SIDE * SIDE];
 
-    /** The identity function on Moves. */
-    static final Function<Move, Move> IDENTITY = k -> k;
+    static {
+        for (int k0 = 0; k0 <= MAX_INDEX; k0 += 1) {
+            for (int k1 = 0; k1 <= MAX_INDEX; k1 += 1) {
+                SINGLE[k0][k1] = new Move(col(k0), row(k0), col(k1), row(k1),
+                                          null);
+            }
+        }
+    }
 
 }
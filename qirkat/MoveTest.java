@@ -42,6 +42,58 @@ public class MoveTest {
         assertEquals("a3-a5-c3-e1", parseMove("a3-a5-c3-e1").toString());
     }
 
+    @Test
+    public void testConcatenate() {
+        Move m0 = parseMove("a3-a5-c5");
+        Move m1 = move(m0, parseMove("c5-c3"));
+        assertEquals("a3-a5-c5-c3", m1.toString());
+        assertEquals("a3-a5-c5", m0.toString());
+        assertEquals("c3-c5-e5", parseMove("c3-c5-e5").toString());
+        assertEquals(parseMove("a3-a5-c5-c3"), m1);
+    }
+
+    @Test
+    public void testPacked() {
+        for (String s : new String[] { "a3-b2", "c3-c4", "a3-a5-c5-c3",
+                                       "c3-a1", "e5-c5-c3-e5" }) {
+            Move m = parseMove(s);
+            long p = pack(m);
+            assertEquals(m, unpack(p));
+            assertEquals(m.fromIndex(), packedFrom(p));
+        }
+        long p = pack(parseMove("a3-a5-c5-c3"));
+        assertEquals(3, packedJumps(p));
+        assertEquals(index('c', '3'), packedTo(p));
+        assertEquals(0, packedJumps(pack(parseMove("c3-c4"))));
+    }
+
+    @Test
+    public void testInterned() throws InterruptedException {
+        assertSame(move('a', '3', 'b', '2'), parseMove("a3-b2"));
+        String[] chains = { "a1-c1-c3-a3-a5", "e5-c5-c3-e3-e1",
+                            "c1-c3-c5-a5-a3-a1" };
+        Move[][] found = new Move[4][chains.length];
+        Thread[] threads = new Thread[found.length];
+        for (int i = 0; i < threads.length; i += 1) {
+            Move[] result = found[i];
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < chains.length; j += 1) {
+                    result[j] = parseMove(chains[j]);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        for (int j = 0; j < chains.length; j += 1) {
+            assertEquals(chains[j], found[0][j].toString());
+            for (Move[] result : found) {
+                assertSame(found[0][j], result[j]);
+            }
+        }
+    }
+
     @Test
     public void testIsLeftMove() {
         Move m = move('b', '1', 'a', '1');
@@ -74,4 +126,25 @@ public class MoveTest {
     public void testIndex() {
         assertEquals(index('a', '2'), 5);
     }
+
+    @Test
+    public void testGeometryTables() {
+        assertEquals(index('b', '2'), NEIGHBOR[index('a', '1')][0]);
+        assertEquals(-1, NEIGHBOR[index('b', '1')][0]);
+        assertEquals(-1, NEIGHBOR[index('e', '3')][4]);
+        assertEquals(index('b', '2'), JUMP_OVER[index('c', '3')][2]);
+        assertEquals(index('a', '1'), JUMP_TO[index('c', '3')][2]);
+        assertEquals(-1, JUMP_TO[index('d', '3')][4]);
+        for (int k = 0; k <= MAX_INDEX; k += 1) {
+            for (int d = 0; d < STEPS.length; d += 1) {
+                int to = JUMP_TO[k][d];
+                if (to >= 0) {
+                    Move m = move(col(k), row(k), col(to), row(to));
+                    assertEquals(packedJump(k, d), pack(m));
+                    assertEquals(JUMP_OVER[k][d], m.jumpedIndex());
+                    assertEquals(JUMP_OVER[k][d], NEIGHBOR[k][d]);
+                }
+            }
+        }
+    }
 }